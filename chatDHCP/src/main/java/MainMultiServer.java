@@ -16,7 +16,7 @@ public class MainMultiServer {
         System.out.println("=== PROJET DHCP MULTI-SERVEURS ===");
         System.out.println("1. Démarrer un serveur DHCP");
         System.out.println("2. Client DHCP multi-serveurs");
-        System.out.println("3. Test avec plusieurs serveurs locaux");
+        System.out.println("3. Test de basculement (paire actif/secours locale)");
         System.out.println("4. Test de connectivité réseau");
         System.out.println("5. Diagnostics réseau");
         System.out.print("Votre choix: ");
@@ -26,7 +26,7 @@ public class MainMultiServer {
         
         switch (choice) {
             case 1:
-                startSingleServer();
+                startSingleServer(scanner);
                 break;
             case 2:
                 startMultiServerClient();
@@ -45,10 +45,15 @@ public class MainMultiServer {
         }
     }
     
-    private static void startSingleServer() {
+    private static void startSingleServer(Scanner scanner) {
+        System.out.print("Fichier de configuration (défaut chatDHCP/config/dhcp.properties): ");
+        String configFile = scanner.nextLine().trim();
+        if (configFile.isEmpty()) {
+            configFile = "chatDHCP/config/dhcp.properties";
+        }
         try {
             DHCPServerNetwork server = new DHCPServerNetwork();
-            server.startNetworkServer("chatDHCP/config/dhcp.properties");
+            server.startNetworkServer(configFile);
         } catch (Exception e) {
             System.err.println("Erreur serveur: " + e.getMessage());
             e.printStackTrace();
@@ -60,21 +65,25 @@ public class MainMultiServer {
         client.startMultiServerInterface();
     }
     
+    /**
+     * Paire de basculement : le secours (port 6768) reçoit les baux de l'actif
+     * (port 6767) et prend la relève si l'actif s'arrête. Pour deux processus
+     * distincts, lancer l'option 1 avec chacun des deux fichiers de configuration.
+     */
     private static void startMultiServerTest() {
         try {
-            System.out.println("Démarrage de plusieurs serveurs DHCP pour test...");
+            System.out.println("Démarrage d'une paire de basculement actif/secours...");
             
-            // Démarrer 3 serveurs sur des ports différents
-            for (int i = 0; i < 3; i++) {
-                final int serverNum = i + 1;
+            String[] configs = {"chatDHCP/config/failover-standby.properties",
+                                "chatDHCP/config/failover-primary.properties"};
+            for (String config : configs) {
                 Thread serverThread = new Thread(() -> {
                     try {
-                        System.out.println("Démarrage serveur " + serverNum);
-                        // Ici vous pourriez configurer des serveurs avec des paramètres différents
+                        System.out.println("Démarrage serveur " + config);
                         DHCPServerNetwork server = new DHCPServerNetwork();
-                        server.startNetworkServer("chatDHCP/config/dhcp.properties");
+                        server.startNetworkServer(config);
                     } catch (Exception e) {
-                        System.err.println("Erreur serveur " + serverNum + ": " + e.getMessage());
+                        System.err.println("Erreur serveur " + config + ": " + e.getMessage());
                     }
                 });
                 serverThread.start();
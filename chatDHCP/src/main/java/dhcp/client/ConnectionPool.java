@@ -0,0 +1,163 @@
+package dhcp.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import dhcp.messages.DHCPMessage;
+import dhcp.utils.FramedConnection;
+
+/**
+ * Pool de connexions TCP persistantes vers les serveurs DHCP, indexé par adresse de serveur.
+ * Un échange DISCOVER -> REQUEST complet (et tous les clients d'un même processus)
+ * réutilise ainsi les connexions déjà établies.
+ */
+public class ConnectionPool {
+    private static final ConnectionPool SHARED = new ConnectionPool(4, 20_000, 3000);
+
+    private final Map<InetSocketAddress, Deque<FramedConnection>> idleConnections;
+    private final int maxIdlePerServer;
+    private final long maxIdleMillis;
+    private final int timeoutMillis;
+
+    /**
+     * @param maxIdlePerServer connexions inactives conservées par serveur
+     * @param maxIdleMillis durée d'inactivité au-delà de laquelle une connexion est fermée
+     *                      (doit rester inférieure au délai de fermeture côté serveur)
+     * @param timeoutMillis délai de connexion et de lecture
+     */
+    public ConnectionPool(int maxIdlePerServer, long maxIdleMillis, int timeoutMillis) {
+        this.idleConnections = new ConcurrentHashMap<>();
+        this.maxIdlePerServer = maxIdlePerServer;
+        this.maxIdleMillis = maxIdleMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Pool partagé par tous les clients du processus
+     */
+    public static ConnectionPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Envoie un message et attend la réponse en réutilisant une connexion du pool.
+     * Si la connexion réutilisée avait été fermée par le serveur, l'échange est
+     * retenté une fois sur une connexion neuve.
+     */
+    public DHCPMessage exchange(InetSocketAddress server, DHCPMessage message) throws IOException {
+        FramedConnection connection = pollIdle(server);
+        if (connection != null) {
+            try {
+                DHCPMessage response = connection.exchange(message);
+                release(server, connection);
+                return response;
+            } catch (SocketTimeoutException e) {
+                connection.close(); // Le serveur n'a pas répondu : pas de nouvel essai
+                throw e;
+            } catch (IOException e) {
+                connection.close(); // Connexion périmée : nouvel essai ci-dessous
+            }
+        }
+
+        connection = connect(server);
+        try {
+            DHCPMessage response = connection.exchange(message);
+            release(server, connection);
+            return response;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Envoie un message sans réponse attendue (RELEASE, DECLINE) ; comme pour
+     * exchange, un envoi sur une connexion périmée est retenté une fois
+     */
+    public void send(InetSocketAddress server, DHCPMessage message) throws IOException {
+        FramedConnection connection = pollIdle(server);
+        if (connection != null) {
+            try {
+                connection.send(message);
+                release(server, connection);
+                return;
+            } catch (IOException e) {
+                connection.close(); // Connexion périmée : nouvel essai ci-dessous
+            }
+        }
+
+        connection = connect(server);
+        try {
+            connection.send(message);
+            release(server, connection);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Rend une connexion au pool après un échange réussi
+     */
+    public void release(InetSocketAddress server, FramedConnection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        Deque<FramedConnection> idle = idleConnections.computeIfAbsent(server, k -> new ConcurrentLinkedDeque<>());
+        if (idle.size() < maxIdlePerServer) {
+            idle.offerFirst(connection);
+        } else {
+            connection.close();
+        }
+    }
+
+    /**
+     * Ferme toutes les connexions inactives
+     */
+    public void closeAll() {
+        for (Deque<FramedConnection> idle : idleConnections.values()) {
+            FramedConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Retire du pool une connexion inactive encore utilisable, ou null
+     */
+    private FramedConnection pollIdle(InetSocketAddress server) {
+        Deque<FramedConnection> idle = idleConnections.get(server);
+        if (idle == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        FramedConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (connection.isOpen() && now - connection.getLastUsedMillis() < maxIdleMillis) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private FramedConnection connect(InetSocketAddress server) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(server, timeoutMillis);
+            FramedConnection connection = new FramedConnection(socket);
+            connection.setReadTimeout(timeoutMillis);
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+}
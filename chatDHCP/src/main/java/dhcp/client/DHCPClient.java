@@ -1,23 +1,28 @@
 package dhcp.client;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import dhcp.messages.AckMessage;
+import dhcp.messages.DHCPMessage;
+import dhcp.messages.DeclineMessage;
 import dhcp.messages.DiscoverMessage;
+import dhcp.messages.InformMessage;
+import dhcp.messages.NakMessage;
 import dhcp.messages.OfferMessage;
+import dhcp.messages.ReleaseMessage;
 import dhcp.messages.RequestMessage;
 import dhcp.server.DHCPServer;
+import dhcp.utils.AsyncLogger;
 
 /**
  * Client DHCP
  */
 public class DHCPClient {
+    private static final int MAX_NAK_RETRIES = 3; // nouveaux DISCOVER immédiats après un NAK
+    
     private String clientId;
     private InetAddress assignedIP;
     private InetAddress subnetMask;
@@ -25,16 +30,16 @@ public class DHCPClient {
     private InetAddress dnsServer;
     private int leaseDuration;
     private LocalDateTime leaseStartTime;
-    private PrintWriter logWriter;
+    private InetAddress leaseServer; // serveur qui a confirmé le bail (destinataire des RELEASE et DECLINE)
+    private boolean rapidCommit; // DISCOVER avec l'option 80 : ACK direct si le serveur l'accepte
+    private final AsyncLogger logger = AsyncLogger.forFile("logs/client.log");
     
     public DHCPClient() {
         this.clientId = generateClientId();
-        initializeLogger();
     }
     
     public DHCPClient(String clientId) {
         this.clientId = clientId;
-        initializeLogger();
     }
     
     /**
@@ -50,6 +55,8 @@ public class DHCPClient {
     public DiscoverMessage sendDiscover() {
         log("Envoi du message DISCOVER...");
         DiscoverMessage discover = new DiscoverMessage(clientId);
+        discover.setTransactionId(ThreadLocalRandom.current().nextInt());
+        discover.setRapidCommit(rapidCommit);
         log("DISCOVER envoyé: " + discover.toString());
         return discover;
     }
@@ -71,6 +78,7 @@ public class DHCPClient {
             offer.getOfferedIP(),
             offer.getServerAddress()
         );
+        request.setTransactionId(offer.getTransactionId());
         
         log("Envoi REQUEST pour accepter l'offre: " + request.toString());
         return request;
@@ -94,6 +102,7 @@ public class DHCPClient {
         this.dnsServer = ack.getDnsServer();
         this.leaseDuration = ack.getLeaseDuration();
         this.leaseStartTime = LocalDateTime.now();
+        this.leaseServer = ack.getServerAddress();
         
         log("Configuration IP reçue et appliquée:");
         log("  - IP: " + assignedIP.getHostAddress());
@@ -106,36 +115,143 @@ public class DHCPClient {
     }
     
     /**
-     * Processus complet DHCP (DISCOVER -> OFFER -> REQUEST -> ACK)
+     * Traite une réponse NAK du serveur : la configuration est abandonnée et le
+     * client peut recommencer aussitôt par un DISCOVER
+     */
+    public boolean handleNak(NakMessage nak) {
+        if (!nak.getClientId().equals(this.clientId)) {
+            log("NAK ignoré - destiné à un autre client");
+            return false;
+        }
+        log("Réception NAK: " + nak.toString());
+        clearConfiguration();
+        return true;
+    }
+    
+    /**
+     * Rend l'adresse attribuée avant la fin du bail : retourne le RELEASE à
+     * envoyer au serveur (aucune réponse attendue), ou null sans configuration
+     */
+    public ReleaseMessage sendRelease() {
+        if (assignedIP == null) {
+            log("RELEASE impossible - aucune adresse attribuée");
+            return null;
+        }
+        ReleaseMessage release = new ReleaseMessage(clientId, assignedIP, leaseServer);
+        release.setTransactionId(ThreadLocalRandom.current().nextInt());
+        log("Envoi RELEASE: " + release.toString());
+        clearConfiguration();
+        return release;
+    }
+    
+    /**
+     * Refuse l'adresse attribuée, détectée comme déjà utilisée sur le réseau :
+     * retourne le DECLINE à envoyer au serveur (aucune réponse attendue), ou null sans configuration
+     */
+    public DeclineMessage sendDecline() {
+        if (assignedIP == null) {
+            log("DECLINE impossible - aucune adresse attribuée");
+            return null;
+        }
+        DeclineMessage decline = new DeclineMessage(clientId, assignedIP, leaseServer);
+        decline.setTransactionId(ThreadLocalRandom.current().nextInt());
+        log("Envoi DECLINE: " + decline.toString());
+        clearConfiguration();
+        return decline;
+    }
+    
+    /**
+     * Demande les paramètres du réseau pour une adresse configurée à la main (INFORM)
+     */
+    public InformMessage sendInform(InetAddress clientIP) {
+        InformMessage inform = new InformMessage(clientId, clientIP);
+        inform.setTransactionId(ThreadLocalRandom.current().nextInt());
+        log("Envoi INFORM: " + inform.toString());
+        return inform;
+    }
+    
+    /**
+     * Traite l'ACK répondant à un INFORM : seules les options du réseau sont
+     * appliquées, l'adresse reste celle configurée par le client
+     */
+    public boolean handleInformAck(AckMessage ack, InetAddress clientIP) {
+        if (!ack.getClientId().equals(this.clientId)) {
+            log("ACK ignoré - destiné à un autre client");
+            return false;
+        }
+        log("Réception ACK (INFORM): " + ack.toString());
+        this.assignedIP = clientIP;
+        this.subnetMask = ack.getSubnetMask();
+        this.defaultGateway = ack.getDefaultGateway();
+        this.dnsServer = ack.getDnsServer();
+        this.leaseDuration = 0;
+        this.leaseStartTime = null;
+        this.leaseServer = null; // Adresse non attribuée par un serveur : rien à libérer
+        return true;
+    }
+    
+    private void clearConfiguration() {
+        this.assignedIP = null;
+        this.subnetMask = null;
+        this.defaultGateway = null;
+        this.dnsServer = null;
+        this.leaseDuration = 0;
+        this.leaseStartTime = null;
+        this.leaseServer = null;
+    }
+    
+    /**
+     * Processus complet DHCP (DISCOVER -> OFFER -> REQUEST -> ACK, ou DISCOVER -> ACK
+     * en Rapid Commit) ; après un NAK le processus recommence aussitôt, sans attendre d'expiration
      */
     public boolean requestIPConfiguration(DHCPServer server) {
+        for (int attempt = 0; attempt <= MAX_NAK_RETRIES; attempt++) {
+            Boolean result = requestOnce(server);
+            if (result != null) {
+                return result;
+            }
+        }
+        log("ERREUR: REQUEST refusé " + (MAX_NAK_RETRIES + 1) + " fois par le serveur");
+        return false;
+    }
+    
+    /**
+     * Un échange DISCOVER -> ACK ; retourne null si le serveur a répondu par un NAK
+     */
+    private Boolean requestOnce(DHCPServer server) {
         try {
             // 1. Envoi DISCOVER
             DiscoverMessage discover = sendDiscover();
             
-            // 2. Réception OFFER
-            OfferMessage offer = server.handleDiscover(discover);
-            if (offer == null) {
+            // 2. Réception OFFER (ou ACK direct en Rapid Commit : processus terminé)
+            DHCPMessage reply = server.handleDiscover(discover);
+            if (reply == null) {
                 log("ERREUR: Aucune offre reçue du serveur");
                 return false;
             }
+            if (reply instanceof AckMessage) {
+                return handleAck((AckMessage) reply);
+            }
             
             // 3. Envoi REQUEST
-            RequestMessage request = handleOffer(offer);
+            RequestMessage request = handleOffer((OfferMessage) reply);
             if (request == null) {
                 log("ERREUR: Impossible de traiter l'offre");
                 return false;
             }
             
-            // 4. Réception ACK
-            AckMessage ack = server.handleRequest(request);
-            if (ack == null) {
+            // 4. Réception ACK (ou NAK : nouvel essai immédiat)
+            DHCPMessage response = server.handleRequest(request);
+            if (response == null) {
                 log("ERREUR: Aucun ACK reçu du serveur");
                 return false;
             }
+            if (response instanceof NakMessage) {
+                return handleNak((NakMessage) response) ? null : Boolean.FALSE;
+            }
             
             // 5. Configuration finale
-            return handleAck(ack);
+            return handleAck((AckMessage) response);
             
         } catch (Exception e) {
             log("ERREUR lors du processus DHCP: " + e.getMessage());
@@ -143,6 +259,34 @@ public class DHCPClient {
         }
     }
     
+    /**
+     * Rend l'adresse attribuée au serveur (processus local)
+     */
+    public boolean release(DHCPServer server) {
+        ReleaseMessage release = sendRelease();
+        return release != null && server.handleRelease(release);
+    }
+    
+    /**
+     * Refuse l'adresse attribuée auprès du serveur (processus local)
+     */
+    public boolean decline(DHCPServer server) {
+        DeclineMessage decline = sendDecline();
+        return decline != null && server.handleDecline(decline);
+    }
+    
+    /**
+     * Obtient les paramètres du réseau pour une adresse fixe (processus local)
+     */
+    public boolean inform(DHCPServer server, InetAddress clientIP) {
+        AckMessage ack = server.handleInform(sendInform(clientIP));
+        if (ack == null) {
+            log("ERREUR: Aucune réponse à l'INFORM");
+            return false;
+        }
+        return handleInformAck(ack, clientIP);
+    }
+    
     /**
      * Affiche la configuration actuelle du client
      */
@@ -153,6 +297,11 @@ public class DHCPClient {
             System.out.println("Masque de sous-réseau: " + subnetMask.getHostAddress());
             System.out.println("Passerelle par défaut: " + defaultGateway.getHostAddress());
             System.out.println("Serveur DNS: " + dnsServer.getHostAddress());
+            if (leaseStartTime == null) {
+                System.out.println("Adresse fixe (paramètres obtenus par INFORM)");
+                System.out.println("=================================\n");
+                return;
+            }
             System.out.println("Durée du bail: " + leaseDuration + " secondes");
             System.out.println("Début du bail: " + leaseStartTime);
             
@@ -169,43 +318,23 @@ public class DHCPClient {
     }
     
     /**
-     * Initialise le système de logs pour le client
+     * Écrit un message dans les logs (asynchrone, fichier partagé par tous les clients)
      */
-    private void initializeLogger() {
-        try {
-            File logDir = new File("logs");
-            if (!logDir.exists()) {
-                logDir.mkdirs();
-            }
-            FileWriter fw = new FileWriter("logs/client.log", true);
-            logWriter = new PrintWriter(fw, true);
-        } catch (IOException e) {
-            System.err.println("Erreur lors de l'initialisation des logs client: " + e.getMessage());
-        }
-    }
-    
-    /**
-     * Écrit un message dans les logs
-     */
-    private void log(String message) {
-        String logMessage = "[" + LocalDateTime.now() + "] [" + clientId + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
+    protected void log(String message) {
+        logger.info("[" + clientId + "] " + message);
     }
     
     // Getters
     public String getClientId() { return clientId; }
     public InetAddress getAssignedIP() { return assignedIP; }
     public boolean hasValidConfiguration() { return assignedIP != null; }
+    public boolean isRapidCommit() { return rapidCommit; }
+    public void setRapidCommit(boolean rapidCommit) { this.rapidCommit = rapidCommit; }
     
     /**
      * Ferme les ressources du client
      */
     public void close() {
-        if (logWriter != null) {
-            logWriter.close();
-        }
+        logger.flush();
     }
 }
\ No newline at end of file
@@ -1,23 +1,26 @@
 package dhcp.client;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.time.LocalDateTime;
+import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
 import dhcp.messages.AckMessage;
 import dhcp.messages.DHCPMessage;
+import dhcp.messages.DeclineMessage;
+import dhcp.messages.InformMessage;
+import dhcp.messages.NakMessage;
 import dhcp.messages.OfferMessage;
+import dhcp.messages.ReleaseMessage;
 import dhcp.messages.RequestMessage;
 
 /**
  * Client DHCP avec support multi-serveurs et découverte broadcast
  */
 public class DHCPClientNetworkMulti extends DHCPClient {
+    private static final int MAX_NAK_RETRIES = 3; // nouvelles découvertes immédiates après un NAK
+    
     private DHCPDiscoveryManager discoveryManager;
     private Scanner scanner;
     private List<String> knownServers;
@@ -69,9 +72,18 @@ public class DHCPClientNetworkMulti extends DHCPClient {
                     showCurrentConfiguration();
                     break;
                 case 7:
-                    configureDiscoverySettings();
+                    releaseConfiguration();
                     break;
                 case 8:
+                    declineConfiguration();
+                    break;
+                case 9:
+                    informStaticAddress();
+                    break;
+                case 10:
+                    configureDiscoverySettings();
+                    break;
+                case 11:
                     System.out.println("Au revoir !");
                     discoveryManager.shutdown();
                     return;
@@ -92,9 +104,12 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         System.out.println("4. Demander config IP automatique (meilleure offre)");
         System.out.println("5. Afficher les dernières offres reçues");
         System.out.println("6. Afficher ma configuration actuelle");
-        System.out.println("7. Configurer la découverte");
-        System.out.println("8. Quitter");
-        System.out.print("Votre choix (1-8): ");
+        System.out.println("7. Libérer mon adresse IP (RELEASE)");
+        System.out.println("8. Signaler mon adresse IP comme déjà utilisée (DECLINE)");
+        System.out.println("9. Obtenir les paramètres réseau pour une IP fixe (INFORM)");
+        System.out.println("10. Configurer la découverte");
+        System.out.println("11. Quitter");
+        System.out.print("Votre choix (1-11): ");
     }
     
     /**
@@ -181,18 +196,19 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         System.out.print("Choix: ");
         
         int choice = getMenuChoice();
-        List<OfferMessage> offers = new ArrayList<>();
+        if (choice != 1 && choice != 2) {
+            System.out.println("Choix invalide");
+            return;
+        }
         
-        switch (choice) {
-            case 1:
-                offers = discoveryManager.discoverWithBroadcast();
-                break;
-            case 2:
-                offers = discoveryManager.discoverKnownServers();
-                break;
-            default:
-                System.out.println("Choix invalide");
-                return;
+        // Simple découverte : pas de Rapid Commit, aucun bail ne doit être enregistré
+        boolean rapidCommit = discoveryManager.isRapidCommit();
+        discoveryManager.setRapidCommit(false);
+        List<OfferMessage> offers;
+        try {
+            offers = choice == 1 ? discoveryManager.discoverWithBroadcast() : discoveryManager.discoverKnownServers();
+        } finally {
+            discoveryManager.setRapidCommit(rapidCommit);
         }
         
         discoveryManager.displayOffers(offers);
@@ -207,6 +223,10 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         
         // Découverte
         List<OfferMessage> offers = performDiscovery();
+        if (applyRapidAck()) {
+            pauseAndContinue();
+            return;
+        }
         if (offers.isEmpty()) {
             System.out.println("Aucune offre reçue. Impossible de continuer.");
             pauseAndContinue();
@@ -230,7 +250,9 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         }
         
         OfferMessage selectedOffer = offers.get(choice - 1);
-        acceptOfferAndConfigure(selectedOffer);
+        if (acceptOfferAndConfigure(selectedOffer)) {
+            System.out.println("Relancez la demande de configuration pour choisir une autre offre");
+        }
         
         pauseAndContinue();
     }
@@ -241,22 +263,31 @@ public class DHCPClientNetworkMulti extends DHCPClient {
     private void requestConfigurationAutomatic() {
         System.out.println("\n--- Configuration IP automatique ---");
         
-        // Découverte
-        List<OfferMessage> offers = performDiscovery();
-        if (offers.isEmpty()) {
-            System.out.println("Aucune offre reçue. Impossible de continuer.");
-            pauseAndContinue();
-            return;
-        }
-        
-        // Sélection automatique de la meilleure offre
-        OfferMessage bestOffer = discoveryManager.selectBestOffer(offers);
-        if (bestOffer != null) {
+        // Découverte, recommencée aussitôt si le REQUEST est refusé par un NAK
+        int mode = chooseDiscoveryMode();
+        for (int attempt = 0; attempt <= MAX_NAK_RETRIES; attempt++) {
+            List<OfferMessage> offers = discover(mode);
+            if (applyRapidAck()) {
+                break;
+            }
+            if (offers.isEmpty()) {
+                System.out.println("Aucune offre reçue. Impossible de continuer.");
+                break;
+            }
+            
+            // Sélection automatique de la meilleure offre
+            OfferMessage bestOffer = discoveryManager.selectBestOffer(offers);
+            if (bestOffer == null) {
+                break;
+            }
             System.out.println("Offre automatiquement sélectionnée:");
             System.out.println("  Serveur: " + bestOffer.getServerAddress().getHostAddress());
             System.out.println("  IP: " + bestOffer.getOfferedIP().getHostAddress());
             
-            acceptOfferAndConfigure(bestOffer);
+            if (!acceptOfferAndConfigure(bestOffer)) {
+                break;
+            }
+            System.out.println("Nouvelle découverte...");
         }
         
         pauseAndContinue();
@@ -266,13 +297,19 @@ public class DHCPClientNetworkMulti extends DHCPClient {
      * Effectue la découverte selon le choix de l'utilisateur
      */
     private List<OfferMessage> performDiscovery() {
+        return discover(chooseDiscoveryMode());
+    }
+    
+    private int chooseDiscoveryMode() {
         System.out.println("Mode de découverte:");
         System.out.println("1. Broadcast (réseau local)");
         System.out.println("2. Serveurs connus uniquement");
         System.out.print("Choix: ");
         
-        int choice = getMenuChoice();
-        
+        return getMenuChoice();
+    }
+    
+    private List<OfferMessage> discover(int choice) {
         switch (choice) {
             case 1:
                 return discoveryManager.discoverWithBroadcast();
@@ -285,9 +322,10 @@ public class DHCPClientNetworkMulti extends DHCPClient {
     }
     
     /**
-     * Accepte une offre et configure le client
+     * Accepte une offre et configure le client ; retourne true si le serveur a
+     * refusé le REQUEST (NAK) et qu'une nouvelle découverte peut être lancée aussitôt
      */
-    private void acceptOfferAndConfigure(OfferMessage offer) {
+    private boolean acceptOfferAndConfigure(OfferMessage offer) {
         try {
             // Envoyer REQUEST
             RequestMessage request = new RequestMessage(
@@ -295,6 +333,7 @@ public class DHCPClientNetworkMulti extends DHCPClient {
                 offer.getOfferedIP(),
                 offer.getServerAddress()
             );
+            request.setTransactionId(offer.getTransactionId());
             
             log("Envoi REQUEST au serveur " + offer.getServerAddress().getHostAddress());
             
@@ -312,6 +351,11 @@ public class DHCPClientNetworkMulti extends DHCPClient {
                 } else {
                     System.out.println("✗ Erreur lors de l'application de la configuration");
                 }
+            } else if (response instanceof NakMessage) {
+                if (handleNak((NakMessage) response)) {
+                    System.out.println("✗ Offre refusée par le serveur (NAK)");
+                    return true;
+                }
             } else {
                 System.out.println("✗ Réponse inattendue du serveur");
             }
@@ -319,6 +363,98 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         } catch (Exception e) {
             log("ERREUR lors de l'acceptation de l'offre: " + e.getMessage());
         }
+        return false;
+    }
+    
+    /**
+     * Rapid Commit : applique le premier ACK reçu directement en réponse au
+     * DISCOVER et rend (RELEASE) les baux enregistrés par les autres serveurs ;
+     * retourne false si aucun serveur n'a répondu par un ACK direct
+     */
+    private boolean applyRapidAck() {
+        List<AckMessage> acks = discoveryManager.takeRapidAcks();
+        if (acks.isEmpty()) {
+            return false;
+        }
+        for (AckMessage extra : acks.subList(1, acks.size())) {
+            ReleaseMessage release = new ReleaseMessage(getClientId(), extra.getAssignedIP(), extra.getServerAddress());
+            try {
+                discoveryManager.sendOneWay(extra.getServerAddress().getHostAddress(), 6767, release);
+            } catch (IOException e) {
+                log("ERREUR lors de l'envoi du RELEASE: " + e.getMessage());
+            }
+        }
+        if (handleAck(acks.get(0))) {
+            System.out.println("✓ Configuration IP appliquée avec succès (Rapid Commit)!");
+            showCurrentConfiguration();
+        } else {
+            System.out.println("✗ Erreur lors de l'application de la configuration");
+        }
+        return true;
+    }
+    
+    /**
+     * Rend l'adresse attribuée au serveur qui l'a confirmée (RELEASE, sans réponse)
+     */
+    private void releaseConfiguration() {
+        ReleaseMessage release = sendRelease();
+        if (release == null || release.getServerAddress() == null) {
+            System.out.println("Aucune adresse attribuée par un serveur à libérer");
+            return;
+        }
+        try {
+            discoveryManager.sendOneWay(release.getServerAddress().getHostAddress(), 6767, release);
+            System.out.println("✓ Adresse " + release.getReleasedIP().getHostAddress() + " libérée");
+        } catch (IOException e) {
+            log("ERREUR lors de l'envoi du RELEASE: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Signale au serveur que l'adresse attribuée est déjà utilisée (DECLINE, sans réponse)
+     */
+    private void declineConfiguration() {
+        DeclineMessage decline = sendDecline();
+        if (decline == null || decline.getServerAddress() == null) {
+            System.out.println("Aucune adresse attribuée par un serveur à refuser");
+            return;
+        }
+        try {
+            discoveryManager.sendOneWay(decline.getServerAddress().getHostAddress(), 6767, decline);
+            System.out.println("✓ Adresse " + decline.getDeclinedIP().getHostAddress()
+                               + " refusée - relancez la demande de configuration");
+        } catch (IOException e) {
+            log("ERREUR lors de l'envoi du DECLINE: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Demande les paramètres réseau pour une adresse configurée à la main (INFORM)
+     */
+    private void informStaticAddress() {
+        try {
+            System.out.print("Adresse IP fixe du client: ");
+            InetAddress clientIP = InetAddress.getByName(scanner.nextLine().trim());
+            String server = knownServers.isEmpty() ? "localhost" : knownServers.get(0);
+            System.out.print("Serveur (Entrée pour " + server + "): ");
+            String input = scanner.nextLine().trim();
+            if (!input.isEmpty()) {
+                server = input;
+            }
+            
+            InformMessage inform = sendInform(clientIP);
+            DHCPMessage response = sendMessageToServer(server, 6767, inform);
+            if (response instanceof AckMessage && handleInformAck((AckMessage) response, clientIP)) {
+                System.out.println("✓ Paramètres réseau appliqués");
+                showCurrentConfiguration();
+            } else {
+                System.out.println("✗ Réponse inattendue du serveur");
+            }
+        } catch (IOException e) {
+            log("ERREUR lors de l'INFORM: " + e.getMessage());
+            System.out.println("✗ " + e.getMessage());
+        }
+        pauseAndContinue();
     }
     
     /**
@@ -349,22 +485,34 @@ public class DHCPClientNetworkMulti extends DHCPClient {
             System.out.println("Valeur invalide");
         }
         
+        System.out.print("Transport (tcp/udp, actuel: " + discoveryManager.getTransport() + "): ");
+        String transport = scanner.nextLine().trim().toLowerCase();
+        if (transport.equals("tcp") || transport.equals("udp")) {
+            discoveryManager.setTransport(transport);
+            System.out.println("✓ Transport configuré: " + transport.toUpperCase());
+        } else if (!transport.isEmpty()) {
+            System.out.println("Transport invalide (tcp ou udp)");
+        }
+        
+        System.out.print("Rapid Commit - ACK direct en deux messages (o/n, actuel: "
+                         + (discoveryManager.isRapidCommit() ? "o" : "n") + "): ");
+        String rapid = scanner.nextLine().trim().toLowerCase();
+        if (rapid.equals("o") || rapid.equals("n")) {
+            discoveryManager.setRapidCommit(rapid.equals("o"));
+            setRapidCommit(rapid.equals("o"));
+            System.out.println("✓ Rapid Commit " + (rapid.equals("o") ? "activé" : "désactivé"));
+        } else if (!rapid.isEmpty()) {
+            System.out.println("Réponse invalide (o ou n)");
+        }
+        
         pauseAndContinue();
     }
     
     // Méthodes utilitaires
     
     private DHCPMessage sendMessageToServer(String serverAddress, int port, DHCPMessage message) 
-            throws IOException, ClassNotFoundException {
-        try (Socket socket = new Socket(serverAddress, port);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            
-            out.writeObject(message);
-            out.flush();
-            
-            return (DHCPMessage) in.readObject();
-        }
+            throws IOException {
+        return discoveryManager.sendMessage(serverAddress, port, message);
     }
     
     private void showCurrentConfiguration() {
@@ -387,9 +535,5 @@ public class DHCPClientNetworkMulti extends DHCPClient {
         System.out.print("\nAppuyez sur Entrée pour continuer...");
         scanner.nextLine();
     }
-    
-    private void log(String message) {
-        String logMessage = "[" + LocalDateTime.now() + "] [" + getClientId() + "] " + message;
-        System.out.println(logMessage);
-    }
+
 }
\ No newline at end of file
@@ -1,23 +1,23 @@
 package dhcp.client;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 
+import dhcp.messages.AckMessage;
 import dhcp.messages.DHCPMessage;
 import dhcp.messages.DiscoverMessage;
 import dhcp.messages.OfferMessage;
+import dhcp.utils.AsyncLogger;
 
 /**
  * Gestionnaire de découverte DHCP avec support broadcast et multiples serveurs
@@ -26,8 +26,12 @@ public class DHCPDiscoveryManager {
     private String clientId;
     private int discoveryPort = 6767;
     private int timeoutSeconds = 10;
+    private String transport = "tcp"; // "tcp" ou "udp"
+    private boolean rapidCommit; // DISCOVER avec l'option 80 (RFC 4039)
+    private final List<AckMessage> rapidAcks = Collections.synchronizedList(new ArrayList<>());
     private List<String> knownServers;
     private ExecutorService executor;
+    private final AsyncLogger logger = AsyncLogger.forFile("logs/client.log");
     
     public DHCPDiscoveryManager(String clientId) {
         this.clientId = clientId;
@@ -138,29 +142,61 @@ public class DHCPDiscoveryManager {
     }
     
     /**
-     * Envoie un DISCOVER à un serveur spécifique
+     * Envoie un DISCOVER à un serveur spécifique. En Rapid Commit, un serveur qui
+     * répond directement par un ACK n'apporte pas d'offre : son ACK est mis de
+     * côté pour takeRapidAcks.
      */
-    private OfferMessage sendDiscoverToServer(String serverAddress) throws IOException, ClassNotFoundException {
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(serverAddress, discoveryPort), 3000);
-            
-            try (ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                 ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-                
-                DiscoverMessage discover = new DiscoverMessage(clientId);
-                out.writeObject(discover);
-                out.flush();
-                
-                DHCPMessage response = (DHCPMessage) in.readObject();
-                
-                if (response instanceof OfferMessage) {
-                    return (OfferMessage) response;
-                }
-            }
+    private OfferMessage sendDiscoverToServer(String serverAddress) throws IOException {
+        DiscoverMessage discover = new DiscoverMessage(clientId);
+        discover.setTransactionId(ThreadLocalRandom.current().nextInt());
+        discover.setRapidCommit(rapidCommit);
+        
+        DHCPMessage response = sendMessage(serverAddress, discoveryPort, discover);
+        if (response instanceof OfferMessage) {
+            return (OfferMessage) response;
+        }
+        if (response instanceof AckMessage) {
+            log("ACK direct (Rapid Commit) reçu de " + serverAddress);
+            rapidAcks.add((AckMessage) response);
         }
         return null;
     }
     
+    /**
+     * Retire les ACK reçus directement (Rapid Commit) depuis l'appel précédent,
+     * dans l'ordre d'arrivée
+     */
+    public List<AckMessage> takeRapidAcks() {
+        synchronized (rapidAcks) {
+            List<AckMessage> acks = new ArrayList<>(rapidAcks);
+            rapidAcks.clear();
+            return acks;
+        }
+    }
+    
+    /**
+     * Envoie un message à un serveur et attend sa réponse avec le transport configuré
+     */
+    public DHCPMessage sendMessage(String serverAddress, int port, DHCPMessage message) throws IOException {
+        if ("udp".equals(transport)) {
+            return UdpExchanger.shared().exchange(new InetSocketAddress(serverAddress, port), message, 3000);
+        }
+        
+        // Connexions TCP persistantes partagées par tous les clients du processus
+        return ConnectionPool.shared().exchange(new InetSocketAddress(serverAddress, port), message);
+    }
+    
+    /**
+     * Envoie un message sans réponse attendue (RELEASE, DECLINE) avec le transport configuré
+     */
+    public void sendOneWay(String serverAddress, int port, DHCPMessage message) throws IOException {
+        if ("udp".equals(transport)) {
+            UdpExchanger.shared().send(new InetSocketAddress(serverAddress, port), message);
+        } else {
+            ConnectionPool.shared().send(new InetSocketAddress(serverAddress, port), message);
+        }
+    }
+    
     /**
      * Scanner le réseau local pour trouver des serveurs DHCP potentiels
      */
@@ -322,6 +358,22 @@ public class DHCPDiscoveryManager {
         this.timeoutSeconds = timeoutSeconds;
     }
     
+    public boolean isRapidCommit() {
+        return rapidCommit;
+    }
+    
+    public void setRapidCommit(boolean rapidCommit) {
+        this.rapidCommit = rapidCommit;
+    }
+    
+    public String getTransport() {
+        return transport;
+    }
+    
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+    
     public void shutdown() {
         if (executor != null) {
             executor.shutdown();
@@ -329,6 +381,6 @@ public class DHCPDiscoveryManager {
     }
     
     private void log(String message) {
-        System.out.println("[" + LocalDateTime.now() + "] [DISCOVERY] " + message);
+        logger.info("[DISCOVERY] " + message);
     }
 }
\ No newline at end of file
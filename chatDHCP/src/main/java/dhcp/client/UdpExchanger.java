@@ -0,0 +1,104 @@
+package dhcp.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.DHCPMessage;
+import dhcp.utils.PacketEndpoint;
+import dhcp.utils.PacketEndpoint.Packet;
+
+/**
+ * Échanges UDP côté client sur un seul PacketEndpoint de longue durée.
+ * Un thread de réception vide les réponses par lots et les remet à l'appelant
+ * en attente d'après l'identifiant de transaction (xid).
+ */
+public class UdpExchanger {
+    private static UdpExchanger shared;
+
+    private final PacketEndpoint endpoint;
+    private final Map<Integer, CompletableFuture<DHCPMessage>> pendingReplies = new ConcurrentHashMap<>();
+
+    public UdpExchanger() throws IOException {
+        this.endpoint = PacketEndpoint.open();
+        Thread receiver = new Thread(this::receiveLoop, "dhcp-client-udp");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Instance partagée par tous les clients du processus
+     */
+    public static synchronized UdpExchanger shared() throws IOException {
+        if (shared == null) {
+            shared = new UdpExchanger();
+        }
+        return shared;
+    }
+
+    /**
+     * Envoie un message sans réponse attendue (RELEASE, DECLINE)
+     */
+    public void send(InetSocketAddress server, DHCPMessage message) throws IOException {
+        endpoint.send(message, server);
+    }
+
+    /**
+     * Envoie un message et attend la réponse portant le même xid
+     */
+    public DHCPMessage exchange(InetSocketAddress server, DHCPMessage message, long timeoutMillis) throws IOException {
+        int xid = message.getTransactionId();
+        CompletableFuture<DHCPMessage> reply = new CompletableFuture<>();
+        if (pendingReplies.putIfAbsent(xid, reply) != null) {
+            throw new IOException("Transaction " + xid + " déjà en cours");
+        }
+        try {
+            endpoint.send(message, server);
+            return reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Pas de réponse de " + server);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Échange interrompu", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pendingReplies.remove(xid, reply);
+        }
+    }
+
+    private void receiveLoop() {
+        List<Packet> batch = new ArrayList<>();
+        while (endpoint.isOpen()) {
+            try {
+                batch.clear();
+                endpoint.drain(batch, 32, 0);
+                for (Packet packet : batch) {
+                    try {
+                        DHCPMessage response = DHCPCodec.decode(packet.payload());
+                        CompletableFuture<DHCPMessage> reply = pendingReplies.get(response.getTransactionId());
+                        if (reply != null) {
+                            reply.complete(response);
+                        }
+                    } catch (ProtocolException e) {
+                        // Réponse illisible : ignorée
+                    } finally {
+                        packet.release();
+                    }
+                }
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ public class AckMessage extends DHCPMessage {
     private InetAddress defaultGateway;
     private InetAddress dnsServer;
     private int leaseDuration;
+    private boolean rapidCommit; // option 80 : ACK envoyé directement en réponse à un DISCOVER
     
     public AckMessage(String clientId, InetAddress assignedIP, InetAddress subnetMask,
                      InetAddress defaultGateway, InetAddress dnsServer, int leaseDuration) {
@@ -28,11 +29,17 @@ public class AckMessage extends DHCPMessage {
     public InetAddress getDefaultGateway() { return defaultGateway; }
     public InetAddress getDnsServer() { return dnsServer; }
     public int getLeaseDuration() { return leaseDuration; }
+    public boolean isRapidCommit() { return rapidCommit; }
+    public void setRapidCommit(boolean rapidCommit) { this.rapidCommit = rapidCommit; }
     
     @Override
     public String toString() {
         return String.format("ACK - IP attribuée: %s, Masque: %s, Passerelle: %s, DNS: %s, Durée bail: %d sec", 
-                           assignedIP.getHostAddress(), subnetMask.getHostAddress(),
-                           defaultGateway.getHostAddress(), dnsServer.getHostAddress(), leaseDuration);
+                           host(assignedIP), host(subnetMask), host(defaultGateway), host(dnsServer), leaseDuration);
+    }
+    
+    // Réponse à un INFORM : pas d'adresse attribuée ni de bail
+    private static String host(InetAddress address) {
+        return address != null ? address.getHostAddress() : "-";
     }
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+package dhcp.messages;
+
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec binaire des messages DHCP au format RFC 2131 (en-tête fixe + options).
+ * Remplace la sérialisation Java : l'encodage et le décodage se font directement
+ * dans un ByteBuffer, sans réflexion ni descripteurs de classe.
+ */
+public final class DHCPCodec {
+    /** Taille minimale qu'un agent DHCP doit accepter (RFC 2131, section 2) */
+    public static final int MAX_MESSAGE_SIZE = 576;
+    public static final int MAGIC_COOKIE = 0x63825363;
+
+    // Champs de l'en-tête fixe
+    public static final byte OP_BOOTREQUEST = 1;
+    public static final byte OP_BOOTREPLY = 2;
+    public static final byte HTYPE_ETHERNET = 1;
+    public static final byte HLEN_ETHERNET = 6;
+    public static final int OFFSET_XID = 4;
+    public static final int OFFSET_CIADDR = 12;
+    public static final int OFFSET_YIADDR = 16;
+    public static final int OFFSET_SIADDR = 20;
+    public static final int OFFSET_GIADDR = 24;
+    public static final int OFFSET_CHADDR = 28;
+    public static final int OFFSET_COOKIE = 236;
+    public static final int OFFSET_OPTIONS = 240;
+    private static final int CHADDR_SNAME_FILE_LENGTH = 16 + 64 + 128;
+
+    // Options utilisées (RFC 2132)
+    public static final int OPT_PAD = 0;
+    public static final int OPT_SUBNET_MASK = 1;
+    public static final int OPT_ROUTER = 3;
+    public static final int OPT_DNS_SERVER = 6;
+    public static final int OPT_REQUESTED_IP = 50;
+    public static final int OPT_LEASE_TIME = 51;
+    public static final int OPT_MESSAGE_TYPE = 53;
+    public static final int OPT_SERVER_ID = 54;
+    public static final int OPT_MESSAGE = 56;
+    public static final int OPT_CLIENT_ID = 61;
+    public static final int OPT_RAPID_COMMIT = 80; // RFC 4039, option sans valeur
+    public static final int OPT_END = 255;
+
+    // Valeurs de l'option 53
+    public static final int TYPE_DISCOVER = 1;
+    public static final int TYPE_OFFER = 2;
+    public static final int TYPE_REQUEST = 3;
+    public static final int TYPE_DECLINE = 4;
+    public static final int TYPE_ACK = 5;
+    public static final int TYPE_NAK = 6;
+    public static final int TYPE_RELEASE = 7;
+    public static final int TYPE_INFORM = 8;
+
+    private static final byte[] ZEROS = new byte[CHADDR_SNAME_FILE_LENGTH];
+
+    private DHCPCodec() {
+    }
+
+    /**
+     * Encode un message à la position courante du buffer
+     */
+    public static void encode(DHCPMessage message, ByteBuffer out) {
+        int start = out.position();
+        switch (message.getMessageType()) {
+            case DISCOVER:
+                writeHeader(out, OP_BOOTREQUEST, message.getTransactionId(), 0, 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_DISCOVER);
+                if (((DiscoverMessage) message).isRapidCommit()) {
+                    writeFlagOption(out, OPT_RAPID_COMMIT);
+                }
+                break;
+            case REQUEST: {
+                RequestMessage request = (RequestMessage) message;
+                writeHeader(out, OP_BOOTREQUEST, message.getTransactionId(), 0, 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_REQUEST);
+                writeAddressOption(out, OPT_REQUESTED_IP, request.getRequestedIP());
+                writeAddressOption(out, OPT_SERVER_ID, request.getServerAddress());
+                break;
+            }
+            case OFFER: {
+                OfferMessage offer = (OfferMessage) message;
+                writeHeader(out, OP_BOOTREPLY, message.getTransactionId(), 0, toInt(offer.getOfferedIP()));
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_OFFER);
+                writeAddressOption(out, OPT_SERVER_ID, offer.getServerAddress());
+                writeIntOption(out, OPT_LEASE_TIME, offer.getLeaseDuration());
+                writeAddressOption(out, OPT_SUBNET_MASK, offer.getSubnetMask());
+                writeAddressOption(out, OPT_ROUTER, offer.getDefaultGateway());
+                writeAddressOption(out, OPT_DNS_SERVER, offer.getDnsServer());
+                break;
+            }
+            case ACK: {
+                AckMessage ack = (AckMessage) message;
+                writeHeader(out, OP_BOOTREPLY, message.getTransactionId(), 0, toInt(ack.getAssignedIP()));
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_ACK);
+                writeAddressOption(out, OPT_SERVER_ID, ack.getServerAddress());
+                if (ack.isRapidCommit()) {
+                    writeFlagOption(out, OPT_RAPID_COMMIT);
+                }
+                if (ack.getLeaseDuration() > 0) {
+                    writeIntOption(out, OPT_LEASE_TIME, ack.getLeaseDuration()); // Absent en réponse à un INFORM
+                }
+                writeAddressOption(out, OPT_SUBNET_MASK, ack.getSubnetMask());
+                writeAddressOption(out, OPT_ROUTER, ack.getDefaultGateway());
+                writeAddressOption(out, OPT_DNS_SERVER, ack.getDnsServer());
+                break;
+            }
+            case NAK: {
+                NakMessage nak = (NakMessage) message;
+                writeHeader(out, OP_BOOTREPLY, message.getTransactionId(), 0, 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_NAK);
+                writeAddressOption(out, OPT_SERVER_ID, nak.getServerAddress());
+                writeStringOption(out, OPT_MESSAGE, nak.getMessage());
+                break;
+            }
+            case RELEASE: {
+                ReleaseMessage release = (ReleaseMessage) message;
+                writeHeader(out, OP_BOOTREQUEST, message.getTransactionId(), toInt(release.getReleasedIP()), 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_RELEASE);
+                writeAddressOption(out, OPT_SERVER_ID, release.getServerAddress());
+                break;
+            }
+            case DECLINE: {
+                DeclineMessage decline = (DeclineMessage) message;
+                writeHeader(out, OP_BOOTREQUEST, message.getTransactionId(), 0, 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_DECLINE);
+                writeAddressOption(out, OPT_REQUESTED_IP, decline.getDeclinedIP());
+                writeAddressOption(out, OPT_SERVER_ID, decline.getServerAddress());
+                break;
+            }
+            case INFORM: {
+                InformMessage inform = (InformMessage) message;
+                writeHeader(out, OP_BOOTREQUEST, message.getTransactionId(), toInt(inform.getClientIP()), 0);
+                writeByteOption(out, OPT_MESSAGE_TYPE, TYPE_INFORM);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Type de message non encodable: " + message.getMessageType());
+        }
+        out.putInt(start + OFFSET_GIADDR, toInt(message.getRelayAddress()));
+        writeClientId(out, message.getClientId());
+        out.put((byte) OPT_END);
+    }
+
+    /**
+     * Décode un message à partir de la position courante du buffer
+     */
+    public static DHCPMessage decode(ByteBuffer in) throws ProtocolException {
+        try {
+            int start = in.position();
+            if (in.remaining() < OFFSET_OPTIONS) {
+                throw new ProtocolException("Message DHCP tronqué (" + in.remaining() + " octets)");
+            }
+            int xid = in.getInt(start + OFFSET_XID);
+            int ciaddr = in.getInt(start + OFFSET_CIADDR);
+            int yiaddr = in.getInt(start + OFFSET_YIADDR);
+            int giaddr = in.getInt(start + OFFSET_GIADDR);
+            if (in.getInt(start + OFFSET_COOKIE) != MAGIC_COOKIE) {
+                throw new ProtocolException("Magic cookie DHCP invalide");
+            }
+            in.position(start + OFFSET_OPTIONS);
+
+            int type = -1;
+            String clientId = null;
+            int subnetMask = 0;
+            int router = 0;
+            int dnsServer = 0;
+            int leaseTime = 0;
+            int serverId = 0;
+            int requestedIP = 0;
+            String text = null;
+            boolean rapidCommit = false;
+
+            while (in.hasRemaining()) {
+                int code = in.get() & 0xFF;
+                if (code == OPT_PAD) {
+                    continue;
+                }
+                if (code == OPT_END) {
+                    break;
+                }
+                int length = in.get() & 0xFF;
+                int next = in.position() + length;
+                if (next > in.limit()) {
+                    throw new ProtocolException("Option " + code + " tronquée (" + length + " octets annoncés)");
+                }
+                checkLength(code, length);
+                switch (code) {
+                    case OPT_MESSAGE_TYPE: type = in.get() & 0xFF; break;
+                    case OPT_SUBNET_MASK: subnetMask = in.getInt(); break;
+                    case OPT_ROUTER: router = in.getInt(); break; // Premier routeur de la liste
+                    case OPT_DNS_SERVER: dnsServer = in.getInt(); break; // Premier serveur de la liste
+                    case OPT_LEASE_TIME: leaseTime = in.getInt(); break;
+                    case OPT_SERVER_ID: serverId = in.getInt(); break;
+                    case OPT_REQUESTED_IP: requestedIP = in.getInt(); break;
+                    case OPT_CLIENT_ID: clientId = readClientId(in, length); break;
+                    case OPT_MESSAGE: text = readString(in, length); break;
+                    case OPT_RAPID_COMMIT: rapidCommit = true; break;
+                    default: break; // Option inconnue : ignorée
+                }
+                in.position(next);
+            }
+
+            if (clientId == null) {
+                throw new ProtocolException("Option client-identifier (61) absente");
+            }
+
+            DHCPMessage message;
+            switch (type) {
+                case TYPE_DISCOVER:
+                    DiscoverMessage discover = new DiscoverMessage(clientId);
+                    discover.setRapidCommit(rapidCommit);
+                    message = discover;
+                    break;
+                case TYPE_REQUEST:
+                    message = new RequestMessage(clientId, toAddress(requestedIP), toAddress(serverId));
+                    break;
+                case TYPE_OFFER:
+                    message = new OfferMessage(clientId, toAddress(yiaddr), toAddress(subnetMask),
+                                               toAddress(router), toAddress(dnsServer), leaseTime);
+                    message.setServerAddress(toAddress(serverId));
+                    break;
+                case TYPE_ACK:
+                    AckMessage ack = new AckMessage(clientId, toAddress(yiaddr), toAddress(subnetMask),
+                                                    toAddress(router), toAddress(dnsServer), leaseTime);
+                    ack.setRapidCommit(rapidCommit);
+                    message = ack;
+                    message.setServerAddress(toAddress(serverId));
+                    break;
+                case TYPE_NAK:
+                    message = new NakMessage(clientId, text);
+                    message.setServerAddress(toAddress(serverId));
+                    break;
+                case TYPE_RELEASE:
+                    message = new ReleaseMessage(clientId, toAddress(ciaddr), toAddress(serverId));
+                    break;
+                case TYPE_DECLINE:
+                    message = new DeclineMessage(clientId, toAddress(requestedIP), toAddress(serverId));
+                    break;
+                case TYPE_INFORM:
+                    message = new InformMessage(clientId, toAddress(ciaddr));
+                    break;
+                default:
+                    throw new ProtocolException("Type de message DHCP non supporté: " + type);
+            }
+            message.setTransactionId(xid);
+            message.setRelayAddress(toAddress(giaddr));
+            return message;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new ProtocolException("Message DHCP mal formé: " + e);
+        }
+    }
+
+    /**
+     * Écrit l'en-tête fixe BOOTP et le magic cookie
+     */
+    public static void writeHeader(ByteBuffer out, byte op, int xid, int ciaddr, int yiaddr) {
+        out.put(op);
+        out.put(HTYPE_ETHERNET);
+        out.put(HLEN_ETHERNET);
+        out.put((byte) 0);    // hops
+        out.putInt(xid);
+        out.putShort((short) 0); // secs
+        out.putShort((short) 0); // flags
+        out.putInt(ciaddr);
+        out.putInt(yiaddr);
+        out.putInt(0);        // siaddr
+        out.putInt(0);        // giaddr
+        out.put(ZEROS);       // chaddr, sname, file
+        out.putInt(MAGIC_COOKIE);
+    }
+
+    public static void writeByteOption(ByteBuffer out, int code, int value) {
+        out.put((byte) code);
+        out.put((byte) 1);
+        out.put((byte) value);
+    }
+
+    public static void writeIntOption(ByteBuffer out, int code, int value) {
+        out.put((byte) code);
+        out.put((byte) 4);
+        out.putInt(value);
+    }
+
+    public static void writeAddressOption(ByteBuffer out, int code, InetAddress address) {
+        if (address != null) {
+            writeIntOption(out, code, toInt(address));
+        }
+    }
+
+    /**
+     * Écrit une option sans valeur (longueur 0), comme Rapid Commit
+     */
+    public static void writeFlagOption(ByteBuffer out, int code) {
+        out.put((byte) code);
+        out.put((byte) 0);
+    }
+
+    /**
+     * Écrit une option texte (ISO-8859-1, tronquée à 255 caractères) ; rien pour null
+     */
+    public static void writeStringOption(ByteBuffer out, int code, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        int length = Math.min(text.length(), 255);
+        out.put((byte) code);
+        out.put((byte) length);
+        for (int i = 0; i < length; i++) {
+            out.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Écrit l'option 61 (type 0 = identifiant non matériel, caractères ISO-8859-1)
+     */
+    public static void writeClientId(ByteBuffer out, String clientId) {
+        int length = Math.min(clientId.length(), 254);
+        out.put((byte) OPT_CLIENT_ID);
+        out.put((byte) (length + 1));
+        out.put((byte) 0);
+        for (int i = 0; i < length; i++) {
+            out.put((byte) clientId.charAt(i));
+        }
+    }
+
+    /**
+     * Vérifie la longueur annoncée d'une option connue avant de la lire
+     */
+    private static void checkLength(int code, int length) throws ProtocolException {
+        boolean valid;
+        switch (code) {
+            case OPT_MESSAGE_TYPE:
+                valid = length == 1;
+                break;
+            case OPT_SUBNET_MASK:
+            case OPT_LEASE_TIME:
+            case OPT_SERVER_ID:
+            case OPT_REQUESTED_IP:
+                valid = length == 4;
+                break;
+            case OPT_ROUTER:
+            case OPT_DNS_SERVER:
+                valid = length >= 4 && length % 4 == 0; // Liste d'adresses
+                break;
+            case OPT_CLIENT_ID:
+                valid = length >= 1; // Type d'identifiant au moins
+                break;
+            case OPT_RAPID_COMMIT:
+                valid = length == 0;
+                break;
+            default:
+                valid = true;
+                break;
+        }
+        if (!valid) {
+            throw new ProtocolException("Longueur invalide pour l'option " + code + ": " + length);
+        }
+    }
+
+    private static String readClientId(ByteBuffer in, int length) {
+        in.get(); // type d'identifiant
+        char[] chars = new char[length - 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (in.get() & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private static String readString(ByteBuffer in, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (in.get() & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Convertit une adresse IPv4 en entier (0 pour null)
+     */
+    public static int toInt(InetAddress address) {
+        if (address == null) {
+            return 0;
+        }
+        byte[] bytes = address.getAddress();
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    /**
+     * Convertit un entier en adresse IPv4 (null pour 0)
+     */
+    public static InetAddress toAddress(int ip) {
+        if (ip == 0) {
+            return null;
+        }
+        byte[] bytes = { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip };
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e); // impossible pour 4 octets
+        }
+    }
+}
@@ -14,9 +14,11 @@ public abstract class DHCPMessage implements Serializable {
     protected InetAddress serverAddress;
     protected LocalDateTime timestamp;
     protected MessageType messageType;
+    protected int transactionId;
+    protected InetAddress relayAddress; // giaddr : agent relais par lequel le message a transité
     
     public enum MessageType {
-        DISCOVER, OFFER, REQUEST, ACK
+        DISCOVER, OFFER, REQUEST, ACK, DECLINE, NAK, RELEASE, INFORM
     }
     
     public DHCPMessage(String clientId, MessageType messageType) {
@@ -31,6 +33,10 @@ public abstract class DHCPMessage implements Serializable {
     public LocalDateTime getTimestamp() { return timestamp; }
     public InetAddress getServerAddress() { return serverAddress; }
     public void setServerAddress(InetAddress serverAddress) { this.serverAddress = serverAddress; }
+    public int getTransactionId() { return transactionId; }
+    public void setTransactionId(int transactionId) { this.transactionId = transactionId; }
+    public InetAddress getRelayAddress() { return relayAddress; }
+    public void setRelayAddress(InetAddress relayAddress) { this.relayAddress = relayAddress; }
     
     @Override
     public String toString() {
@@ -0,0 +1,27 @@
+package dhcp.messages;
+
+import java.net.InetAddress;
+
+/**
+ * Message DECLINE - Émis par le client qui a détecté que l'adresse attribuée est déjà utilisée
+ */
+public class DeclineMessage extends DHCPMessage {
+    private static final long serialVersionUID = 1L;
+    
+    private InetAddress declinedIP;
+    
+    public DeclineMessage(String clientId, InetAddress declinedIP, InetAddress serverAddress) {
+        super(clientId, MessageType.DECLINE);
+        this.declinedIP = declinedIP;
+        this.serverAddress = serverAddress;
+    }
+    
+    public InetAddress getDeclinedIP() { return declinedIP; }
+    
+    @Override
+    public String toString() {
+        return String.format("DECLINE - Client %s refuse l'IP: %s (déjà utilisée) du serveur: %s", 
+                           clientId, declinedIP != null ? declinedIP.getHostAddress() : "inconnue",
+                           serverAddress != null ? serverAddress.getHostAddress() : "inconnu");
+    }
+}
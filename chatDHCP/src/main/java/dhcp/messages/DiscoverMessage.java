@@ -4,13 +4,18 @@ package dhcp.messages;
  * Message DISCOVER - Émis par un client pour découvrir les serveurs DHCP disponibles
  */
 public class DiscoverMessage extends DHCPMessage {
+    private boolean rapidCommit; // option 80 : le client accepte un ACK immédiat (RFC 4039)
     
     public DiscoverMessage(String clientId) {
         super(clientId, MessageType.DISCOVER);
     }
     
+    public boolean isRapidCommit() { return rapidCommit; }
+    public void setRapidCommit(boolean rapidCommit) { this.rapidCommit = rapidCommit; }
+    
     @Override
     public String toString() {
-        return String.format("DISCOVER - Client %s recherche une configuration IP", clientId);
+        return String.format("DISCOVER - Client %s recherche une configuration IP%s", 
+                           clientId, rapidCommit ? " (Rapid Commit)" : "");
     }
 }
\ No newline at end of file
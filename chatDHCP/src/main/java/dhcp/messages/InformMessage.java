@@ -0,0 +1,26 @@
+package dhcp.messages;
+
+import java.net.InetAddress;
+
+/**
+ * Message INFORM - Émis par un client déjà configuré (adresse fixe) qui ne
+ * demande que les paramètres du réseau, sans attribution d'adresse
+ */
+public class InformMessage extends DHCPMessage {
+    private static final long serialVersionUID = 1L;
+    
+    private InetAddress clientIP;
+    
+    public InformMessage(String clientId, InetAddress clientIP) {
+        super(clientId, MessageType.INFORM);
+        this.clientIP = clientIP;
+    }
+    
+    public InetAddress getClientIP() { return clientIP; }
+    
+    @Override
+    public String toString() {
+        return String.format("INFORM - Client %s (IP: %s) demande les paramètres du réseau", 
+                           clientId, clientIP != null ? clientIP.getHostAddress() : "inconnue");
+    }
+}
@@ -0,0 +1,24 @@
+package dhcp.messages;
+
+/**
+ * Message NAK - Émis par le serveur pour refuser un REQUEST : le client
+ * abandonne sa configuration et recommence aussitôt par un DISCOVER
+ */
+public class NakMessage extends DHCPMessage {
+    private static final long serialVersionUID = 1L;
+    
+    private String message; // raison du refus (option 56), peut être null
+    
+    public NakMessage(String clientId, String message) {
+        super(clientId, MessageType.NAK);
+        this.message = message;
+    }
+    
+    public String getMessage() { return message; }
+    
+    @Override
+    public String toString() {
+        return String.format("NAK - REQUEST du client %s refusé%s", 
+                           clientId, message != null ? ": " + message : "");
+    }
+}
@@ -0,0 +1,27 @@
+package dhcp.messages;
+
+import java.net.InetAddress;
+
+/**
+ * Message RELEASE - Émis par le client pour rendre son adresse avant la fin du bail
+ */
+public class ReleaseMessage extends DHCPMessage {
+    private static final long serialVersionUID = 1L;
+    
+    private InetAddress releasedIP;
+    
+    public ReleaseMessage(String clientId, InetAddress releasedIP, InetAddress serverAddress) {
+        super(clientId, MessageType.RELEASE);
+        this.releasedIP = releasedIP;
+        this.serverAddress = serverAddress;
+    }
+    
+    public InetAddress getReleasedIP() { return releasedIP; }
+    
+    @Override
+    public String toString() {
+        return String.format("RELEASE - Client %s libère l'IP: %s auprès du serveur: %s", 
+                           clientId, releasedIP != null ? releasedIP.getHostAddress() : "inconnue",
+                           serverAddress != null ? serverAddress.getHostAddress() : "inconnu");
+    }
+}
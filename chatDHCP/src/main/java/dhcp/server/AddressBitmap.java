@@ -0,0 +1,277 @@
+package dhcp.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ensemble des adresses libres d'une plage, sous forme de bitmap indexée par
+ * position dans la plage (bit à 1 = adresse libre). Un second niveau de bits
+ * (un bit par mot de 64 adresses) permet de trouver la prochaine adresse libre
+ * sans parcourir les mots entièrement occupés.
+ * Sans verrou : chaque prise ou restitution est un compare-and-set sur le mot
+ * concerné, une adresse ne peut donc être prise que par un seul appelant.
+ * Le résumé n'est qu'un indice : un bit à 1 peut désigner un mot devenu plein,
+ * mais un mot contenant une adresse libre a toujours son bit à 1.
+ * Les mots sont alloués par blocs de 4096 adresses au premier changement : un
+ * bloc jamais touché est implicitement dans son état initial (libre dans
+ * [fromIndex, toIndex[), la création ne coûte donc qu'un mot de résumé par bloc.
+ */
+public class AddressBitmap {
+    private static final int CHUNK_WORDS = 64; // 4096 adresses par bloc, un mot de résumé par bloc
+
+    private final int size;
+    private final int fromIndex;
+    private final int toIndex;
+    private final AtomicReferenceArray<AtomicLongArray> chunks; // null = bloc dans son état initial
+    private final AtomicLongArray summary; // bit i à 1 = le mot i contient peut-être une adresse libre
+    private final LongAdder free = new LongAdder(); // compteur réparti : pas de mot partagé disputé
+    private int cursor; // simple indice de départ, les écritures concurrentes perdues sont sans conséquence
+
+    /**
+     * Crée une bitmap de size adresses, toutes libres
+     */
+    public AddressBitmap(int size) {
+        this(size, 0, size);
+    }
+
+    /**
+     * Crée une bitmap de size adresses dont seules les positions [fromIndex, toIndex[ sont libres
+     */
+    public AddressBitmap(int size, int fromIndex, int toIndex) {
+        this.size = size;
+        this.fromIndex = Math.max(fromIndex, 0);
+        this.toIndex = Math.min(toIndex, size);
+        int wordCount = (size + 63) >>> 6;
+        this.chunks = new AtomicReferenceArray<>((wordCount + CHUNK_WORDS - 1) / CHUNK_WORDS);
+        this.summary = new AtomicLongArray(chunks.length());
+        if (this.fromIndex < this.toIndex) {
+            // Mots initialement non vides : [fromIndex / 64, (toIndex - 1) / 64]
+            int firstWord = this.fromIndex >>> 6;
+            int lastWord = (this.toIndex - 1) >>> 6;
+            for (int s = firstWord >>> 6; s <= lastWord >>> 6; s++) {
+                long bits = -1L;
+                if (s == firstWord >>> 6) {
+                    bits &= -1L << firstWord;
+                }
+                if (s == lastWord >>> 6) {
+                    bits &= -1L >>> (63 - (lastWord & 63));
+                }
+                summary.set(s, bits);
+            }
+        }
+        this.cursor = this.fromIndex < size ? this.fromIndex : 0;
+        free.add(Math.max(0, this.toIndex - this.fromIndex));
+    }
+
+    /**
+     * Prend la prochaine adresse libre à partir du curseur tournant,
+     * ou retourne -1 si la plage est pleine
+     */
+    public int allocate() {
+        int index = allocateFrom(cursor);
+        if (index >= 0) {
+            cursor = index + 1 < size ? index + 1 : 0;
+        }
+        return index;
+    }
+
+    /**
+     * Prend la première adresse libre à partir de hint (en revenant au début si besoin),
+     * ou retourne -1 si la plage est pleine. Des appelants partant de positions
+     * différentes ne se disputent pas les mêmes mots.
+     */
+    public int allocateFrom(int hint) {
+        int from = hint >= 0 && hint < size ? hint : 0;
+        boolean wrapped = from == 0;
+        while (true) {
+            int index = nextFree(from);
+            if (index < 0) {
+                if (wrapped) {
+                    return -1;
+                }
+                wrapped = true;
+                from = 0;
+                continue;
+            }
+            if (claim(index)) {
+                return index;
+            }
+            from = index; // Pris par un autre thread : on réessaie sur le même mot
+        }
+    }
+
+    /**
+     * Prend une adresse précise ; retourne false si elle n'était pas libre
+     */
+    public boolean claim(int index) {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if ((word(w) & bit) == 0) {
+            return false; // Pas de bloc alloué pour un simple refus
+        }
+        AtomicLongArray words = chunk(w);
+        int i = w & (CHUNK_WORDS - 1);
+        long current;
+        do {
+            current = words.get(i);
+            if ((current & bit) == 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(i, current, current & ~bit));
+        free.decrement();
+        if (current == bit) {
+            clearSummary(w);
+        }
+        return true;
+    }
+
+    /**
+     * Rend une adresse ; retourne false si elle était déjà libre (pas de doublon possible)
+     */
+    public boolean release(int index) {
+        int w = index >>> 6;
+        long bit = 1L << index;
+        if ((word(w) & bit) != 0) {
+            return false;
+        }
+        AtomicLongArray words = chunk(w);
+        int i = w & (CHUNK_WORDS - 1);
+        long current;
+        do {
+            current = words.get(i);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(i, current, current | bit));
+        free.increment();
+        setSummary(w);
+        return true;
+    }
+
+    public boolean isFree(int index) {
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Position de la première adresse libre >= from, ou -1
+     */
+    public int nextFree(int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long bits = word(w) & (-1L << from);
+        if (bits != 0) {
+            return (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        // Recherche du prochain mot non plein via le résumé
+        int next = w + 1;
+        for (int s = next >>> 6; s < summary.length(); s++) {
+            long candidates = summary.get(s);
+            if (s == next >>> 6) {
+                candidates &= -1L << next;
+            }
+            while (candidates != 0) {
+                int word = (s << 6) + Long.numberOfTrailingZeros(candidates);
+                long free = word(word);
+                if (free != 0) {
+                    return (word << 6) + Long.numberOfTrailingZeros(free);
+                }
+                candidates &= candidates - 1; // Indice périmé : mot rempli entre-temps
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position de la première adresse occupée >= from, ou size() ; avec nextFree,
+     * permet de parcourir les plages d'adresses libres mot par mot
+     */
+    public int nextUsed(int from) {
+        for (int w = from >>> 6; (w << 6) < size; w++) {
+            long used = ~word(w);
+            if (w == from >>> 6) {
+                used &= -1L << from;
+            }
+            if (used != 0) {
+                return Math.min((w << 6) + Long.numberOfTrailingZeros(used), size);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Nombre d'adresses libres, tenu à chaque prise ou restitution (lecture en temps constant)
+     */
+    public int freeCount() {
+        return (int) free.sum();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Efface le bit de résumé d'un mot devenu plein, puis le rétablit si une
+     * restitution concurrente a libéré une adresse entre-temps
+     */
+    private void clearSummary(int w) {
+        int s = w >>> 6;
+        long bit = 1L << w;
+        long current;
+        do {
+            current = summary.get(s);
+        } while ((current & bit) != 0 && !summary.compareAndSet(s, current, current & ~bit));
+        if (word(w) != 0) {
+            setSummary(w);
+        }
+    }
+
+    /**
+     * Valeur courante d'un mot, sans allouer son bloc
+     */
+    private long word(int w) {
+        AtomicLongArray words = chunks.get(w / CHUNK_WORDS);
+        return words == null ? initialWord(w) : words.get(w & (CHUNK_WORDS - 1));
+    }
+
+    /**
+     * Bloc d'un mot, alloué dans son état initial au premier changement
+     */
+    private AtomicLongArray chunk(int w) {
+        int c = w / CHUNK_WORDS;
+        AtomicLongArray words = chunks.get(c);
+        if (words == null) {
+            words = new AtomicLongArray(CHUNK_WORDS);
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                words.set(i, initialWord(c * CHUNK_WORDS + i));
+            }
+            if (!chunks.compareAndSet(c, null, words)) {
+                words = chunks.get(c); // Alloué par un autre thread
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Mot d'un bloc jamais modifié : adresses libres de [fromIndex, toIndex[
+     */
+    private long initialWord(int w) {
+        int first = Math.max(fromIndex - (w << 6), 0);
+        int end = Math.min(toIndex - (w << 6), 64);
+        if (first >= end) {
+            return 0;
+        }
+        return (end == 64 ? -1L : (1L << end) - 1) & (-1L << first);
+    }
+
+    private void setSummary(int w) {
+        int s = w >>> 6;
+        long bit = 1L << w;
+        long current;
+        do {
+            current = summary.get(s);
+        } while ((current & bit) == 0 && !summary.compareAndSet(s, current, current | bit));
+    }
+}
@@ -0,0 +1,41 @@
+package dhcp.server;
+
+import java.net.InetAddress;
+
+import dhcp.messages.DHCPCodec;
+
+/**
+ * Plage contiguë d'adresses IPv4 [first, last], pour l'affichage compact des adresses libres
+ */
+public class AddressRange {
+    private final int first;
+    private final int last;
+
+    public AddressRange(int first, int last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    public int getFirst() { return first; }
+    public int getLast() { return last; }
+
+    public long size() {
+        return (last & 0xFFFFFFFFL) - (first & 0xFFFFFFFFL) + 1;
+    }
+
+    public InetAddress getFirstAddress() {
+        return DHCPCodec.toAddress(first);
+    }
+
+    public InetAddress getLastAddress() {
+        return DHCPCodec.toAddress(last);
+    }
+
+    @Override
+    public String toString() {
+        if (first == last) {
+            return getFirstAddress().getHostAddress();
+        }
+        return getFirstAddress().getHostAddress() + " - " + getLastAddress().getHostAddress() + " (" + size() + ")";
+    }
+}
@@ -0,0 +1,88 @@
+package dhcp.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache borné « dernière adresse connue » : position dans la plage de la dernière
+ * adresse tenue par un client, pour la lui rendre s'il revient après l'expiration
+ * ou la libération de son bail. Les entrées les moins récemment utilisées sont
+ * évincées au-delà de la capacité. Segmenté comme l'index client de LeaseTable,
+ * chaque segment étant une LinkedHashMap en ordre d'accès (accès en O(1)).
+ */
+public class AffinityCache {
+    private static final int STRIPES = 16;
+
+    private final Segment[] segments = new Segment[STRIPES];
+
+    public AffinityCache(int capacity) {
+        int perSegment = capacity <= 0 ? 0 : Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Mémorise la dernière position tenue par un client
+     */
+    public void remember(String clientId, int index) {
+        Segment segment = segmentOf(clientId);
+        if (segment.capacity == 0) {
+            return;
+        }
+        synchronized (segment) {
+            segment.put(clientId, index);
+        }
+    }
+
+    /**
+     * Dernière position connue d'un client, ou -1
+     */
+    public int lookup(String clientId) {
+        Segment segment = segmentOf(clientId);
+        synchronized (segment) {
+            Integer index = segment.get(clientId);
+            return index != null ? index : -1;
+        }
+    }
+
+    /**
+     * Oublie l'affinité d'un client (position rendue à un autre client)
+     */
+    public void forget(String clientId) {
+        Segment segment = segmentOf(clientId);
+        synchronized (segment) {
+            segment.remove(clientId);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentOf(String clientId) {
+        return segments[(clientId.hashCode() >>> 28) % STRIPES];
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > capacity;
+        }
+    }
+}
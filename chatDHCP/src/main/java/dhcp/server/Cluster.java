@@ -0,0 +1,751 @@
+package dhcp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Grappe de serveurs servant les mêmes étendues. Chaque nœud possède une tranche
+ * de chaque plage (découpage contigu selon son rang dans dhcp.cluster.nodes) et
+ * ne répond qu'aux DISCOVER des clients dont l'identifiant est haché vers lui :
+ * deux nœuds ne proposent jamais la même adresse, et rien n'est échangé entre
+ * nœuds sur le chemin des requêtes. Les clients d'un nœud muet depuis le délai de
+ * repli sont servis, sur sa propre tranche, par le nœud joignable suivant dans la liste.
+ * Les nœuds s'annoncent leurs adresses libres à chaque battement de cœur ; un nœud
+ * passé sous le seuil bas demande un bloc au nœud le mieux pourvu, qui le retire
+ * de son pool avant de le céder. Les adresses possédées sont enregistrées sur
+ * disque à chaque cession (fichier &lt;dir&gt;/&lt;étendue&gt;.cluster) : un bloc en
+ * transit lors d'une coupure est perdu plutôt que donné deux fois.
+ * Message : type(1) puis STATUS libres(4) par étendue, REQUEST étendue(4) nombre(4),
+ * GRANT étendue(4) nombre(4) positions(4 chacune).
+ */
+public class Cluster implements Closeable {
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+    private static final int MAGIC = 0x4448434C; // "DHCL"
+    private static final byte STATUS = 1;
+    private static final byte REQUEST = 2;
+    private static final byte GRANT = 3;
+    private static final int RETRY_MILLIS = 1000;
+
+    private final int self;
+    private final InetSocketAddress[] nodes;
+    private final Path stateDir;
+    private final int heartbeatMillis;
+    private final int fallbackMillis;
+    private final int lowWatermark;
+    private final int blockSize;
+    private final Peer[] peers; // null pour ce nœud
+    private final List<Partition> partitions = new CopyOnWriteArrayList<>(); // dans l'ordre des étendues
+    private final Map<IPPool, Partition> byPool = new ConcurrentHashMap<>(); // par pool : une étendue rechargée garde le sien
+    private volatile int fingerprint; // plages et nombre de nœuds, identiques sur toute la grappe
+    private volatile ServerSocket serverSocket;
+    private ScheduledExecutorService ticker;
+    private volatile boolean closed;
+
+    private Cluster(int self, InetSocketAddress[] nodes, Path stateDir, int heartbeatMillis, int fallbackMillis,
+                    int lowWatermark, int blockSize) {
+        this.self = self;
+        this.nodes = nodes;
+        this.stateDir = stateDir;
+        this.heartbeatMillis = heartbeatMillis;
+        this.fallbackMillis = fallbackMillis;
+        this.lowWatermark = lowWatermark;
+        this.blockSize = blockSize;
+        this.peers = new Peer[nodes.length];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < nodes.length; i++) {
+            if (i != self) {
+                peers[i] = new Peer(i, now);
+            }
+        }
+    }
+
+    /**
+     * Grappe décrite par la configuration, ou null sans grappe : dhcp.cluster.nodes
+     * (hôte:port de chaque nœud, dans le même ordre sur tous), dhcp.cluster.node
+     * (rang de ce nœud dans la liste), dhcp.cluster.fallback.delay (ms de silence
+     * avant de servir les clients d'un nœud), dhcp.cluster.rebalance.low et
+     * dhcp.cluster.rebalance.block (seuil bas d'adresses libres et taille maximale
+     * d'un bloc cédé), dhcp.cluster.heartbeat (ms) et dhcp.cluster.state.dir
+     */
+    public static Cluster fromConfig(Properties config) throws IOException {
+        String list = config.getProperty("dhcp.cluster.nodes", "").trim();
+        if (list.isEmpty()) {
+            return null;
+        }
+        String[] entries = list.split(",");
+        InetSocketAddress[] nodes = new InetSocketAddress[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IOException("dhcp.cluster.nodes invalide (hôte:port attendu): " + entry);
+            }
+            nodes[i] = new InetSocketAddress(entry.substring(0, separator),
+                                             Integer.parseInt(entry.substring(separator + 1)));
+        }
+        int self = Integer.parseInt(config.getProperty("dhcp.cluster.node", "0").trim());
+        if (self < 0 || self >= nodes.length) {
+            throw new IOException("dhcp.cluster.node hors de la liste dhcp.cluster.nodes: " + self);
+        }
+        return new Cluster(self, nodes,
+            Paths.get(config.getProperty("dhcp.cluster.state.dir", "data").trim()),
+            Integer.parseInt(config.getProperty("dhcp.cluster.heartbeat", "500").trim()),
+            Integer.parseInt(config.getProperty("dhcp.cluster.fallback.delay", "3000").trim()),
+            Integer.parseInt(config.getProperty("dhcp.cluster.rebalance.low", "64").trim()),
+            Integer.parseInt(config.getProperty("dhcp.cluster.rebalance.block", "256").trim()));
+    }
+
+    /**
+     * Rattache une étendue dont le pool vient d'être initialisé sur la tranche de ce
+     * nœud (Scope.initializePool(getSelf(), size())), en rétablissant les cessions
+     * enregistrées ; les réservations de toute la grappe servent au routage des clients
+     */
+    public void attach(Scope scope, Map<String, InetAddress> reservations) throws IOException {
+        IPPool pool = scope.getPool();
+        int size = pool.rangeSize();
+        int from = (int) ((long) size * self / nodes.length);
+        int to = (int) ((long) size * (self + 1) / nodes.length);
+        String name = scope.getName() == null ? "default" : scope.getName();
+        int rangeStart = DHCPCodec.toInt(InetAddress.getByName(scope.getStartIP().trim()));
+        Partition p = new Partition(partitions.size(), scope, stateDir.resolve(name + ".cluster"), rangeStart, size);
+        for (Map.Entry<String, InetAddress> entry : reservations.entrySet()) {
+            int index = p.indexOf(entry.getValue());
+            if (index >= 0) {
+                p.reserved.put(entry.getKey(), index);
+            }
+        }
+        BitSet saved = load(p);
+        if (saved == null) {
+            for (int i = from; i < to; i++) {
+                p.setOwned(i, true);
+            }
+        } else {
+            // Adresses cédées depuis la tranche d'origine, puis adresses reçues hors de celle-ci
+            int given = 0;
+            for (int i = from; i < to; i++) {
+                if (!saved.get(i) && pool.takeFree(i)) {
+                    given++;
+                }
+            }
+            IntList adopted = new IntList();
+            for (int i = saved.nextSetBit(0); i >= 0 && i < size; i = saved.nextSetBit(i + 1)) {
+                p.setOwned(i, true);
+                if (i < from || i >= to) {
+                    adopted.add(i);
+                }
+            }
+            int[] block = new int[adopted.size()];
+            for (int i = 0; i < block.length; i++) {
+                block[i] = adopted.get(i);
+            }
+            pool.addFreeBlock(block, block.length);
+            if (given > 0 || block.length > 0) {
+                logger.info("Grappe, étendue " + scope.getDisplayName() + ": " + given + " adresse(s) cédée(s) et "
+                            + block.length + " reçue(s) lors des exécutions précédentes");
+            }
+        }
+        save(p);
+        partitions.add(p);
+        byPool.put(scope.getPool(), p);
+    }
+
+    /**
+     * Ouvre le port de la grappe et démarre les liaisons vers les autres nœuds et le rééquilibrage
+     */
+    public void start() throws IOException {
+        int hash = nodes.length;
+        for (Partition p : partitions) {
+            hash = 31 * (31 * hash + p.rangeStart) + p.size;
+        }
+        fingerprint = hash;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(nodes[self].getPort()));
+        Thread acceptor = new Thread(this::acceptLoop, "dhcp-cluster");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.start();
+            }
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "dhcp-cluster-rebalance");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(this::rebalance, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        logger.info("Grappe: nœud " + self + " sur " + nodes.length + ", port " + nodes[self].getPort());
+    }
+
+    /**
+     * Vrai si ce nœud doit répondre au DISCOVER d'un client : client haché vers ce
+     * nœud, ou vers un nœud muet depuis le délai de repli dont ce nœud est le
+     * suivant joignable. Un client réservé est servi par le nœud qui possède son adresse.
+     */
+    public boolean serves(Scope scope, String clientId) {
+        Partition p = byPool.get(scope.getPool());
+        if (p == null) {
+            return true;
+        }
+        if (!p.reserved.isEmpty()) {
+            Integer index = p.reserved.get(clientId);
+            if (index != null) {
+                return p.owns(index);
+            }
+        }
+        int owner = ownerOf(clientId);
+        for (int i = 0; i < nodes.length; i++) {
+            int node = (owner + i) % nodes.length;
+            if (node == self) {
+                return true;
+            }
+            if (isAlive(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Vrai si l'adresse appartient à ce nœud (seules ses adresses peuvent être attribuées ici)
+     */
+    public boolean owns(Scope scope, InetAddress ip) {
+        Partition p = byPool.get(scope.getPool());
+        if (p == null) {
+            return true;
+        }
+        int index = p.indexOf(ip);
+        return index >= 0 && p.owns(index);
+    }
+
+    /**
+     * Nœud attitré d'un client. Le hachage est mélangé pour que des identifiants
+     * voisins (hashCode proches) se répartissent sur tous les nœuds.
+     */
+    private int ownerOf(String clientId) {
+        int h = clientId.hashCode() * 0x9E3779B9;
+        return (int) (((h ^ (h >>> 16)) & 0xFFFFFFFFL) % nodes.length);
+    }
+
+    public boolean isAlive(int node) {
+        return node == self || (node >= 0 && node < nodes.length
+                                && System.currentTimeMillis() - peers[node].lastHeard < fallbackMillis);
+    }
+
+    /**
+     * Nombre d'adresses de la plage possédées par ce nœud pour une étendue
+     */
+    public int getOwnedCount(Scope scope) {
+        Partition p = byPool.get(scope.getPool());
+        return p == null ? 0 : p.ownedCount.get();
+    }
+
+    public int getSelf() {
+        return self;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public InetSocketAddress getNode(int node) {
+        return nodes[node];
+    }
+
+    /**
+     * Tâche périodique : relève les adresses libres de ce nœud (annoncées par les
+     * battements de cœur) et demande un bloc pour chaque tranche passée sous le seuil bas
+     */
+    private void rebalance() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Partition p : partitions) {
+                int free = p.scope.getPool().getStats().getFree();
+                p.free.set(self, free);
+                if (free >= lowWatermark || now - p.requestedAt < fallbackMillis) {
+                    continue; // Assez d'adresses, ou demande en cours
+                }
+                int donor = -1;
+                int best = lowWatermark;
+                for (int node = 0; node < nodes.length; node++) {
+                    if (node != self && isAlive(node) && p.free.get(node) > best) {
+                        donor = node;
+                        best = p.free.get(node);
+                    }
+                }
+                int count = Math.min(blockSize, (best - free) / 2); // La moitié de l'écart, sans aller-retour
+                if (donor >= 0 && count > 0 && peers[donor].send(REQUEST, p.id, count, null, 0)) {
+                    p.requestedAt = now;
+                    logger.info("Grappe, étendue " + p.scope.getDisplayName() + ": " + free
+                                + " adresse(s) libre(s), demande de " + count + " au nœud " + donor);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Grappe: rééquilibrage impossible: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cède à un nœud au plus count adresses libres, sans descendre sous le seuil bas
+     */
+    private void grant(Partition p, int node, int count) {
+        Peer peer = peers[node];
+        IPPool pool = p.scope.getPool();
+        int[] block = new int[Math.max(0, Math.min(count, pool.getStats().getFree() - lowWatermark))];
+        int given = 0;
+        if (block.length > 0 && peer.isConnected()) {
+            synchronized (p) {
+                given = pool.takeFreeBlock(block.length, block);
+                for (int i = 0; i < given; i++) {
+                    p.setOwned(block[i], false);
+                }
+                try {
+                    save(p);
+                } catch (IOException e) {
+                    logger.error("Grappe: cession annulée, état non enregistré: " + e.getMessage());
+                    for (int i = 0; i < given; i++) {
+                        p.setOwned(block[i], true);
+                    }
+                    pool.addFreeBlock(block, given);
+                    given = 0;
+                }
+            }
+        }
+        if (peer.send(GRANT, p.id, given, block, given)) {
+            if (given > 0) {
+                logger.info("Grappe, étendue " + p.scope.getDisplayName() + ": " + given
+                            + " adresse(s) cédée(s) au nœud " + node);
+            }
+        } else if (given > 0) {
+            logger.warn("Grappe: cession de " + given + " adresse(s) au nœud " + node
+                        + " interrompue, adresses perdues jusqu'à réattribution manuelle");
+        }
+    }
+
+    /**
+     * Adopte un bloc cédé par un autre nœud : enregistré comme possédé avant d'être proposé
+     */
+    private void adopt(Partition p, int node, int[] block, int count) {
+        if (count > 0) {
+            synchronized (p) {
+                for (int i = 0; i < count; i++) {
+                    p.setOwned(block[i], true);
+                }
+                try {
+                    save(p);
+                } catch (IOException e) {
+                    logger.error("Grappe: état non enregistré: " + e.getMessage());
+                }
+            }
+            p.scope.getPool().addFreeBlock(block, count);
+            logger.info("Grappe, étendue " + p.scope.getDisplayName() + ": " + count
+                        + " adresse(s) reçue(s) du nœud " + node);
+        }
+        p.requestedAt = 0;
+    }
+
+    /**
+     * Accepte les liaisons entrantes des autres nœuds, une lecture par liaison
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> receive(socket), "dhcp-cluster-in");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Grappe: erreur d'acceptation: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lit les messages d'un nœud ; un silence plus long que le délai de repli ferme la liaison
+     */
+    private void receive(Socket socket) {
+        int node = -1;
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()))) {
+            s.setSoTimeout(Math.max(fallbackMillis, 4 * heartbeatMillis));
+            if (in.readInt() != MAGIC) {
+                throw new ProtocolException("pair inconnu " + s.getRemoteSocketAddress());
+            }
+            node = in.readInt();
+            if (node < 0 || node >= nodes.length || node == self) {
+                throw new ProtocolException("rang de nœud invalide " + node);
+            }
+            if (in.readInt() != fingerprint) {
+                throw new ProtocolException("le nœud " + node + " n'a pas les mêmes étendues ou nœuds");
+            }
+            Peer peer = peers[node];
+            while (!closed) {
+                byte type = in.readByte();
+                peer.lastHeard = System.currentTimeMillis();
+                switch (type) {
+                    case STATUS:
+                        for (Partition p : partitions) {
+                            p.free.set(node, in.readInt());
+                        }
+                        break;
+                    case REQUEST: {
+                        Partition p = partition(in.readInt());
+                        grant(p, node, in.readInt());
+                        break;
+                    }
+                    case GRANT: {
+                        Partition p = partition(in.readInt());
+                        int count = in.readInt();
+                        if (count < 0 || count > p.size) {
+                            throw new ProtocolException("bloc de " + count + " adresses pour une plage de " + p.size);
+                        }
+                        int[] block = new int[count];
+                        for (int i = 0; i < count; i++) {
+                            block[i] = in.readInt();
+                            if (block[i] < 0 || block[i] >= p.size) {
+                                throw new ProtocolException("position " + block[i] + " hors de la plage");
+                            }
+                        }
+                        adopt(p, node, block, count);
+                        break;
+                    }
+                    default:
+                        throw new ProtocolException("message de type " + type + " inconnu");
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            logger.warn("Grappe: nœud " + node + " muet, liaison fermée");
+        } catch (IOException | IndexOutOfBoundsException e) {
+            if (!closed) {
+                logger.warn("Grappe: liaison depuis le nœud " + node + " interrompue: "
+                            + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    /**
+     * Partition désignée par un message d'un pair
+     */
+    private Partition partition(int id) throws ProtocolException {
+        if (id < 0 || id >= partitions.size()) {
+            throw new ProtocolException("étendue " + id + " inconnue");
+        }
+        return partitions.get(id);
+    }
+
+    /**
+     * Relit les adresses possédées enregistrées ; null sans fichier, ou si le fichier
+     * a été écrit pour une autre plage ou une autre grappe (mis de côté, suffixe .old)
+     */
+    private BitSet load(Partition p) throws IOException {
+        if (!Files.exists(p.file)) {
+            return null;
+        }
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(p.file)) {
+            state.load(in);
+        }
+        String range = p.scope.getStartIP().trim() + "-" + p.scope.getEndIP().trim();
+        if (!range.equals(state.getProperty("range")) || !String.valueOf(nodes.length).equals(state.getProperty("nodes"))
+            || !String.valueOf(self).equals(state.getProperty("node"))) {
+            Path old = p.file.resolveSibling(p.file.getFileName() + ".old");
+            logger.warn("État de grappe " + p.file + " écrit pour une autre plage ou grappe, déplacé vers " + old);
+            Files.move(p.file, old, StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        }
+        BitSet owned = new BitSet(p.size);
+        for (String entry : state.getProperty("owned", "").split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.indexOf('-');
+            int first = p.indexOf(InetAddress.getByName(separator < 0 ? entry : entry.substring(0, separator)));
+            int last = separator < 0 ? first : p.indexOf(InetAddress.getByName(entry.substring(separator + 1)));
+            if (first < 0 || last < first) {
+                throw new IOException("Plage invalide dans " + p.file + ": " + entry);
+            }
+            owned.set(first, last + 1);
+        }
+        return owned;
+    }
+
+    /**
+     * Enregistre les adresses possédées (plages contiguës), par remplacement atomique du fichier
+     */
+    private void save(Partition p) throws IOException {
+        StringBuilder owned = new StringBuilder();
+        int from = p.nextOwned(0, true);
+        while (from >= 0) {
+            int end = p.nextOwned(from, false);
+            if (owned.length() > 0) {
+                owned.append(',');
+            }
+            owned.append(DHCPCodec.toAddress(p.rangeStart + from).getHostAddress());
+            if (end - 1 > from) {
+                owned.append('-').append(DHCPCodec.toAddress(p.rangeStart + end - 1).getHostAddress());
+            }
+            from = p.nextOwned(end, true);
+        }
+        Properties state = new Properties();
+        state.setProperty("range", p.scope.getStartIP().trim() + "-" + p.scope.getEndIP().trim());
+        state.setProperty("nodes", String.valueOf(nodes.length));
+        state.setProperty("node", String.valueOf(self));
+        state.setProperty("owned", owned.toString());
+        Files.createDirectories(stateDir);
+        Path tmp = p.file.resolveSibling(p.file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            state.store(out, "Adresses possédées par le nœud " + self + " de la grappe");
+            out.getFD().sync();
+        }
+        Files.move(tmp, p.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        ServerSocket s = serverSocket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.close();
+            }
+        }
+    }
+
+    /**
+     * État de la grappe pour une étendue : adresses possédées par ce nœud (lues sans
+     * verrou par le chemin des requêtes, modifiées sous le verrou de la partition)
+     * et adresses libres annoncées par chaque nœud
+     */
+    private final class Partition {
+        private final int id;
+        private final Scope scope;
+        private final Path file;
+        private final int rangeStart;
+        private final int size;
+        private final AtomicLongArray owned;
+        private final AtomicInteger ownedCount = new AtomicInteger();
+        private final Map<String, Integer> reserved = new HashMap<>(); // client -> position, toute la grappe
+        private final AtomicIntegerArray free = new AtomicIntegerArray(nodes.length);
+        private volatile long requestedAt; // demande de bloc en cours (0 = aucune)
+
+        Partition(int id, Scope scope, Path file, int rangeStart, int size) {
+            this.id = id;
+            this.scope = scope;
+            this.file = file;
+            this.rangeStart = rangeStart;
+            this.size = size;
+            this.owned = new AtomicLongArray((size + 63) >>> 6);
+        }
+
+        /**
+         * Position d'une adresse dans la plage, ou -1 si elle est hors plage
+         */
+        int indexOf(InetAddress ip) {
+            long offset = (DHCPCodec.toInt(ip) & 0xFFFFFFFFL) - (rangeStart & 0xFFFFFFFFL);
+            return offset >= 0 && offset < size ? (int) offset : -1;
+        }
+
+        boolean owns(int index) {
+            return index < size && (owned.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        void setOwned(int index, boolean value) {
+            long current;
+            long next;
+            do {
+                current = owned.get(index >>> 6);
+                next = value ? current | 1L << index : current & ~(1L << index);
+            } while (current != next && !owned.compareAndSet(index >>> 6, current, next));
+            if (current != next) {
+                ownedCount.addAndGet(value ? 1 : -1);
+            }
+        }
+
+        /**
+         * Prochaine position à partir de from possédée (value = true) ou non, ou -1 / size
+         */
+        int nextOwned(int from, boolean value) {
+            for (int w = from >>> 6; (long) w << 6 < size; w++) {
+                long word = value ? owned.get(w) : ~owned.get(w);
+                if (w == from >>> 6) {
+                    word &= -1L << from;
+                }
+                if (word != 0) {
+                    int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                    return index < size ? index : value ? -1 : size;
+                }
+            }
+            return value ? -1 : size;
+        }
+    }
+
+    /**
+     * Liaison sortante vers un autre nœud : connexion avec nouvelles tentatives et
+     * battement de cœur portant les adresses libres de ce nœud
+     */
+    private final class Peer {
+        private final int id;
+        private volatile long lastHeard; // dernier message reçu de ce nœud (liaison entrante)
+        private DataOutputStream out;    // sous le verrou du Peer
+        private Socket socket;
+        private Thread thread;
+
+        Peer(int id, long now) {
+            this.id = id;
+            this.lastHeard = now; // Délai de grâce au démarrage
+        }
+
+        void start() {
+            thread = new Thread(this::run, "dhcp-cluster-" + id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void run() {
+            boolean warned = false;
+            while (!closed) {
+                try {
+                    if (!isConnected()) {
+                        connect();
+                        warned = false;
+                    }
+                    if (!send(STATUS, 0, 0, null, 0)) {
+                        throw new IOException("envoi impossible");
+                    }
+                    Thread.sleep(heartbeatMillis);
+                } catch (IOException e) {
+                    if (!warned && !closed) {
+                        logger.warn("Grappe: nœud " + id + " (" + nodes[id] + ") injoignable: " + e.getMessage());
+                        warned = true;
+                    }
+                    disconnect();
+                    try {
+                        Thread.sleep(RETRY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket s = new Socket();
+            try {
+                s.connect(nodes[id], RETRY_MILLIS);
+                s.setTcpNoDelay(true);
+                DataOutputStream o = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                o.writeInt(MAGIC);
+                o.writeInt(self);
+                o.writeInt(fingerprint);
+                o.flush();
+                synchronized (this) {
+                    socket = s;
+                    out = o;
+                }
+            } catch (IOException e) {
+                s.close();
+                throw e;
+            }
+            logger.info("Grappe: liaison établie vers le nœud " + id + " (" + nodes[id] + ")");
+        }
+
+        synchronized boolean isConnected() {
+            return out != null;
+        }
+
+        /**
+         * Envoie un message ; false (liaison fermée) si la liaison est coupée
+         */
+        synchronized boolean send(byte type, int scope, int count, int[] block, int blockCount) {
+            if (out == null) {
+                return false;
+            }
+            try {
+                out.writeByte(type);
+                if (type == STATUS) {
+                    for (Partition p : partitions) {
+                        out.writeInt(p.free.get(self));
+                    }
+                } else {
+                    out.writeInt(scope);
+                    out.writeInt(count);
+                    for (int i = 0; i < blockCount; i++) {
+                        out.writeInt(block[i]);
+                    }
+                }
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                disconnect();
+                return false;
+            }
+        }
+
+        synchronized void disconnect() {
+            out = null;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Fermeture silencieuse
+                }
+                socket = null;
+            }
+        }
+
+        void close() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            disconnect();
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package dhcp.server;
 
-import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
@@ -15,27 +18,56 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import dhcp.messages.AckMessage;
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.DHCPMessage;
+import dhcp.messages.DeclineMessage;
 import dhcp.messages.DiscoverMessage;
+import dhcp.messages.InformMessage;
+import dhcp.messages.NakMessage;
 import dhcp.messages.OfferMessage;
+import dhcp.messages.ReleaseMessage;
 import dhcp.messages.RequestMessage;
+import dhcp.utils.AsyncLogger;
 
 /**
- * Serveur DHCP principal
+ * Serveur DHCP principal. Les adresses sont servies par étendues : l'étendue par
+ * défaut (clés dhcp.pool.*) pour les clients locaux, et les étendues nommées de
+ * dhcp.scopes choisies selon l'agent relais (giaddr) du message.
+ * En paire de basculement (dhcp.replication.role), le serveur actif transmet ses
+ * changements de bail au secours, qui ne répond aux clients qu'après la relève.
+ * Sans nouvelles de son partenaire, chacun se limite aux renouvellements (voir
+ * declarePartnerDown) : les deux ne peuvent ainsi pas attribuer la même adresse.
+ * En grappe (dhcp.cluster.nodes), chaque serveur ne gère qu'une partie de chaque
+ * plage et ne répond qu'à une partie des clients (voir Cluster).
+ * Avec dhcp.rapid.commit, un DISCOVER portant l'option Rapid Commit (80) reçoit
+ * directement un ACK : le bail est enregistré sans attendre de REQUEST.
  */
 public class DHCPServer {
-    protected IPPool ipPool;
+    private static final int MAX_DISPLAYED_RANGES = 100; // plages libres affichées par 'available'
+    static final String NAK_UNAVAILABLE = "Adresse demandée indisponible"; // option 56 des NAK
+    
+    protected IPPool ipPool; // pool de l'étendue par défaut
     private InetAddress serverAddress;
-    private InetAddress subnetMask;
-    private InetAddress defaultGateway;
-    private InetAddress dnsServer;
-    private int defaultLeaseDuration;
+    private int offerTimeout;
+    private int declineQuarantine;
+    private volatile boolean rapidCommit; // ACK direct aux DISCOVER portant l'option 80 (RFC 4039)
+    private volatile ScopeIndex scopeIndex = new ScopeIndex(Collections.emptyList()); // étendues publiées, remplacées d'un bloc au rechargement
+    private String configFile;
+    private Properties config;
     private ScheduledExecutorService scheduler;
-    private PrintWriter logWriter;
+    private LeaseJournal journal;
+    private List<LeaseStore> stores = Collections.emptyList();
+    private ReplicationSender replication;
+    private ReplicationReceiver standby;
+    private Cluster cluster;
+    private volatile boolean active = true;      // false : secours en attente de relève
+    private volatile InetAddress partnerAddress; // identifiant de l'ancien actif, après la relève
+    private volatile boolean partnerDown;        // partenaire déclaré hors service par l'opérateur
+    protected final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
     
     public DHCPServer() {
         this.ipPool = new IPPool();
         this.scheduler = Executors.newScheduledThreadPool(2);
-        initializeLogger();
     }
     
     /**
@@ -46,108 +78,787 @@ public class DHCPServer {
         try (FileInputStream fis = new FileInputStream(configFile)) {
             config.load(fis);
         }
-        
-        // Chargement de la configuration
-        String startIP = config.getProperty("dhcp.pool.start");
-        String endIP = config.getProperty("dhcp.pool.end");
-        this.defaultLeaseDuration = Integer.parseInt(config.getProperty("dhcp.lease.duration", "3600"));
+        this.config = config;
+        this.configFile = configFile;
+        logger.configure(config);
         
         try {
-            this.subnetMask = InetAddress.getByName(config.getProperty("dhcp.subnet.mask"));
-            this.defaultGateway = InetAddress.getByName(config.getProperty("dhcp.default.gateway"));
-            this.dnsServer = InetAddress.getByName(config.getProperty("dhcp.dns.server"));
             this.serverAddress = InetAddress.getLocalHost();
+            this.offerTimeout = Integer.parseInt(config.getProperty("dhcp.offer.timeout", "30").trim());
+            this.declineQuarantine = Integer.parseInt(config.getProperty("dhcp.decline.quarantine", "600").trim());
+            this.rapidCommit = Boolean.parseBoolean(config.getProperty("dhcp.rapid.commit", "false").trim());
+            this.cluster = Cluster.fromConfig(config);
             
-            // Initialisation du pool d'adresses
-            ipPool.initializePool(startIP, endIP);
+            // Étendue par défaut puis étendues nommées, chacune avec son propre pool
+            List<Scope> loaded = new ArrayList<>();
+            loaded.add(createScope(null, config));
+            for (String name : scopeNames(config)) {
+                loaded.add(createScope(name, config));
+            }
+            this.scopeIndex = new ScopeIndex(loaded);
+            this.ipPool = scopeIndex.getDefault().getPool();
             
             log("Serveur DHCP initialisé avec succès");
-            log("Pool d'adresses: " + startIP + " - " + endIP);
-            log("Durée de bail par défaut: " + defaultLeaseDuration + " secondes");
+            for (Scope scope : getScopes()) {
+                log(scope.toString());
+            }
+            log("Réservation des offres: " + offerTimeout + " secondes");
+            if (rapidCommit) {
+                log("Rapid Commit activé: ACK direct aux DISCOVER portant l'option 80");
+            }
             
-        } catch (UnknownHostException e) {
+        } catch (UnknownHostException | IllegalArgumentException e) {
             log("Erreur lors de l'initialisation: " + e.getMessage());
             throw new IOException("Configuration invalide", e);
         }
         
+        // Baux des exécutions précédentes (base puis fin du journal), puis écriture
+        // de chaque opération avant confirmation
+        openStores(config);
+        openJournal(config);
+        startCheckpointTask(config);
+        openReplication(config);
+        if (cluster != null) {
+            cluster.start();
+        }
+        
         // Démarrage du nettoyage automatique des baux expirés
         startLeaseCleanupTask();
     }
     
     /**
-     * Traite un message DISCOVER du client
+     * Ouvre la base des baux de chaque étendue (clé dhcp.store.dir, vide = pas de
+     * base ; fichier &lt;dir&gt;/&lt;nom&gt;.leases, default.leases pour l'étendue
+     * par défaut), la recharge dans les pools puis l'attache aux pools
+     */
+    private void openStores(Properties config) throws IOException {
+        String dir = config.getProperty("dhcp.store.dir", "").trim();
+        if (dir.isEmpty()) {
+            return;
+        }
+        List<LeaseStore> opened = new ArrayList<>();
+        for (Scope scope : getScopes()) {
+            IPPool pool = scope.getPool();
+            Path file = Paths.get(dir, (scope.getName() == null ? "default" : scope.getName()) + ".leases");
+            int rangeStart = DHCPCodec.toInt(InetAddress.getByName(scope.getStartIP().trim()));
+            LeaseStore store = LeaseStore.open(file, rangeStart, pool.rangeSize());
+            long start = System.nanoTime();
+            int leases = pool.load(store);
+            pool.setStore(store);
+            opened.add(store);
+            log("Base des baux " + file + ": " + leases + " bail(s) rechargé(s) en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        this.stores = opened;
+    }
+    
+    /**
+     * Point de reprise : scelle le segment courant du journal, écrit la base des
+     * baux sur disque, puis supprime les segments scellés qu'elle couvre désormais.
+     * Sans base, les segments scellés sont remplacés par l'état courant des baux.
+     */
+    public synchronized void checkpoint() {
+        try {
+            List<Path> sealed = journal != null ? journal.rotate() : Collections.emptyList();
+            for (LeaseStore store : stores) {
+                store.force();
+            }
+            if (journal != null && !stores.isEmpty()) {
+                journal.delete(sealed);
+            } else if (journal != null) {
+                journal.compact(sealed, this::snapshot);
+            }
+        } catch (IOException | RuntimeException e) {
+            log("Erreur lors du point de reprise: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Point de reprise immédiat (le rejeu du journal est alors absorbé par la base
+     * ou par le journal compacté), puis périodique (clé dhcp.store.checkpoint.interval,
+     * ou dhcp.journal.compact.interval sans base, en secondes)
+     */
+    private void startCheckpointTask(Properties config) {
+        if (stores.isEmpty() && journal == null) {
+            return;
+        }
+        checkpoint();
+        int interval = Integer.parseInt(stores.isEmpty()
+            ? config.getProperty("dhcp.journal.compact.interval", "300").trim()
+            : config.getProperty("dhcp.store.checkpoint.interval", "60").trim());
+        scheduler.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Ouvre le journal des baux (clé dhcp.journal.file, vide = baux en mémoire
+     * seulement), le rejoue dans les pools des étendues puis l'attache aux pools
      */
-    public OfferMessage handleDiscover(DiscoverMessage discover) {
-        log("Réception DISCOVER du client: " + discover.getClientId());
+    private void openJournal(Properties config) throws IOException {
+        String path = config.getProperty("dhcp.journal.file", "").trim();
+        if (path.isEmpty()) {
+            return;
+        }
+        boolean fsync = Boolean.parseBoolean(config.getProperty("dhcp.journal.fsync", "true").trim());
+        LeaseJournal journal = new LeaseJournal(Paths.get(path), fsync);
+        long start = System.nanoTime();
+        int records = journal.replay(this::restoreRecord);
+        for (Scope scope : getScopes()) {
+            scope.getPool().setJournal(journal);
+        }
+        this.journal = journal;
+        log("Journal des baux " + path + ": " + records + " enregistrement(s) rejoué(s) en "
+            + (System.nanoTime() - start) / 1_000_000 + " ms" + (fsync ? "" : " (sans fsync)"));
+        for (Scope scope : getScopes()) {
+            log("Étendue " + scope.getDisplayName() + " après rejeu: " + scope.getPool().getStats());
+        }
+    }
+    
+    /**
+     * Applique un changement de bail (journal ou réplication) au pool de l'étendue de l'adresse
+     */
+    private void restoreRecord(byte type, int ip, String clientId, long startMillis, long deadlineMillis) {
+        for (Scope scope : getScopes()) {
+            if (scope.contains(ip)) {
+                scope.getPool().restore(type, clientId, DHCPCodec.toAddress(ip), startMillis, deadlineMillis);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Paire de basculement (clé dhcp.replication.role) : primary se connecte au
+     * secours dhcp.replication.peer (hôte:port) et lui transmet ses changements de
+     * bail ; standby les reçoit sur dhcp.replication.port et ne répond aux clients
+     * qu'après dhcp.replication.failover.timeout ms sans nouvelles de l'actif.
+     * L'actif sans acquittement du secours pendant ce même délai cesse d'attribuer
+     * de nouvelles adresses, le secours ayant pu prendre la relève.
+     */
+    private void openReplication(Properties config) throws IOException {
+        String role = config.getProperty("dhcp.replication.role", "none").trim().toLowerCase();
+        int heartbeat = Integer.parseInt(config.getProperty("dhcp.replication.heartbeat", "500").trim());
+        int failover = Integer.parseInt(config.getProperty("dhcp.replication.failover.timeout", "3000").trim());
+        switch (role) {
+            case "none":
+                return;
+            case "primary": {
+                String peer = config.getProperty("dhcp.replication.peer", "").trim();
+                int separator = peer.lastIndexOf(':');
+                if (separator <= 0) {
+                    throw new IOException("dhcp.replication.peer invalide (hôte:port attendu): " + peer);
+                }
+                InetSocketAddress address = new InetSocketAddress(peer.substring(0, separator),
+                    Integer.parseInt(peer.substring(separator + 1)));
+                replication = new ReplicationSender(address, DHCPCodec.toInt(serverAddress), heartbeat, this::snapshot);
+                for (Scope scope : getScopes()) {
+                    scope.getPool().setReplication(replication);
+                }
+                replication.start();
+                int period = Math.max(10, failover / 4);
+                scheduler.scheduleWithFixedDelay(() -> watchStandby(failover), period, period, TimeUnit.MILLISECONDS);
+                log("Serveur actif: réplication des baux vers " + peer);
+                return;
+            }
+            case "standby": {
+                int port = Integer.parseInt(config.getProperty("dhcp.replication.port", "6868").trim());
+                active = false;
+                standby = new ReplicationReceiver(port, failover, this::restoreRecord, this::snapshot, this::takeOver);
+                standby.start();
+                log("Serveur de secours: en attente du serveur actif (basculement après " + failover + " ms)");
+                return;
+            }
+            default:
+                throw new IOException("dhcp.replication.role invalide (none, primary ou standby): " + role);
+        }
+    }
+    
+    /**
+     * Instantané des baux actifs de toutes les étendues (compactage du journal,
+     * envoi au secours à la connexion ; côté secours : état comparé à l'instantané reçu)
+     */
+    private void snapshot(LeaseJournal.Replayer sink) {
+        for (Scope scope : getScopes()) {
+            for (Lease lease : scope.getPool().getActiveLeases()) {
+                sink.apply(LeaseJournal.ASSIGN, DHCPCodec.toInt(lease.getIpAddress()), lease.getClientId(),
+                           lease.getStartMillis(), lease.getExpiresAtMillis());
+            }
+        }
+    }
+    
+    /**
+     * Relève par le secours : il répond désormais aux clients, y compris aux
+     * REQUEST adressés à l'ancien actif. L'actif n'étant peut-être que coupé du
+     * secours, seuls les baux reçus par réplication sont renouvelés tant qu'il
+     * n'est pas déclaré hors service.
+     */
+    private void takeOver() {
+        partnerAddress = standby.getPartner();
+        if (!partnerDown) {
+            setRenewOnly(true);
+        }
+        active = true;
+        log("Relève effectuée: " + standby.getApplied() + " changement(s) de bail reçu(s) de l'actif"
+            + (partnerAddress != null ? " " + partnerAddress.getHostAddress() : "")
+            + (partnerDown ? "" : ", renouvellements seulement jusqu'à la commande partner-down"));
+        for (Scope scope : getScopes()) {
+            log("Étendue " + scope.getDisplayName() + " à la relève: " + scope.getPool().getStats());
+        }
+    }
+    
+    /**
+     * Surveillance du secours par l'actif : sans acquittement pendant le délai de
+     * basculement, plus de nouvelle attribution (le secours a pu prendre la relève) ;
+     * les attributions reprennent quand le secours acquitte de nouveau
+     */
+    private void watchStandby(int failoverMillis) {
+        boolean lost = !partnerDown && replication.getSilenceMillis() >= failoverMillis;
+        if (lost != isRenewOnly()) {
+            setRenewOnly(lost);
+            log(lost ? "Serveur de secours muet depuis " + replication.getSilenceMillis()
+                       + " ms: renouvellements seulement jusqu'à son retour ou la commande partner-down"
+                     : "Serveur de secours de nouveau joignable: attributions rétablies");
+        }
+    }
+    
+    /**
+     * Déclare le partenaire de basculement hors service (commande partner-down, à
+     * n'utiliser qu'une fois l'autre serveur réellement arrêté) : les attributions
+     * reprennent sans restriction et ne seront plus suspendues
+     */
+    public void declarePartnerDown() {
+        partnerDown = true;
+        if (isRenewOnly()) {
+            setRenewOnly(false);
+            log("Partenaire de basculement déclaré hors service: attributions rétablies");
+        } else {
+            log("Partenaire de basculement déclaré hors service");
+        }
+    }
+    
+    /**
+     * Vrai si les pools sont limités aux renouvellements (partenaire injoignable)
+     */
+    public boolean isRenewOnly() {
+        return ipPool.isRenewOnly();
+    }
+    
+    private void setRenewOnly(boolean renewOnly) {
+        for (Scope scope : getScopes()) {
+            scope.getPool().setRenewOnly(renewOnly);
+        }
+    }
+    
+    /**
+     * Vrai si l'identifiant de serveur d'un REQUEST désigne ce serveur (ou l'actif
+     * qu'il a relevé)
+     */
+    private boolean isServerAddress(InetAddress address) {
+        return serverAddress.equals(address) || (partnerAddress != null && partnerAddress.equals(address));
+    }
+    
+    /**
+     * Vrai si le serveur répond aux clients (faux pour un secours avant la relève)
+     */
+    public boolean isActive() {
+        return active;
+    }
+    
+    /**
+     * Réplication sortante (serveur actif), ou null
+     */
+    public ReplicationSender getReplication() {
+        return replication;
+    }
+    
+    /**
+     * Grappe dont ce serveur est un nœud, ou null
+     */
+    public Cluster getCluster() {
+        return cluster;
+    }
+    
+    /**
+     * Réception de la réplication (serveur de secours), ou null
+     */
+    public ReplicationReceiver getStandby() {
+        return standby;
+    }
+    
+    /**
+     * Noms des étendues déclarées par la clé dhcp.scopes (liste séparée par des virgules)
+     */
+    private static List<String> scopeNames(Properties config) {
+        List<String> names = new ArrayList<>();
+        for (String name : config.getProperty("dhcp.scopes", "").split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Crée une étendue : son pool, sa plage (la tranche de ce nœud en grappe) et ses options
+     */
+    private Scope createScope(String name, Properties config) throws IOException {
+        IPPool pool = new IPPool();
         
-        // Recherche d'une IP disponible
-        InetAddress availableIP = ipPool.getAvailableIP(discover.getClientId());
-        if (availableIP == null) {
-            log("ERREUR: Aucune adresse IP disponible pour le client " + discover.getClientId());
+        Scope scope = new Scope(name, pool, config, serverAddress);
+        if (cluster == null) {
+            scope.initializePool();
+        } else {
+            scope.initializePool(cluster.getSelf(), cluster.size());
+            cluster.attach(scope, scope.readReservations(config));
+        }
+        pool.setOfferTimeout(offerTimeout);
+        pool.setDeclineQuarantine(declineQuarantine);
+        pool.setAffinityCapacity(Integer.parseInt(config.getProperty("dhcp.affinity.size", "4096").trim()));
+        int reserved = cluster == null ? scope.loadReservations(config)
+                                       : scope.loadReservations(config, ip -> cluster.owns(scope, ip));
+        if (reserved > 0) {
+            log("Étendue " + scope.getDisplayName() + ": " + reserved + " réservation(s) statique(s)");
+        }
+        return scope;
+    }
+    
+    /**
+     * Relit les options (masque, passerelle, DNS, durée de bail) de chaque étendue
+     * sans redémarrer le serveur ; les plages d'adresses ne sont pas modifiées.
+     * Les nouvelles étendues sont construites et validées à part, puis publiées
+     * d'un seul bloc : une configuration refusée laisse le serveur inchangé.
+     */
+    public void reloadConfiguration() throws IOException {
+        Properties config = new Properties();
+        try (FileInputStream fis = new FileInputStream(configFile)) {
+            config.load(fis);
+        }
+        int timeout;
+        int quarantine;
+        ScopeIndex reloaded;
+        try {
+            timeout = Integer.parseInt(config.getProperty("dhcp.offer.timeout", "30").trim());
+            quarantine = Integer.parseInt(config.getProperty("dhcp.decline.quarantine", "600").trim());
+            List<Scope> scopes = new ArrayList<>();
+            for (Scope scope : getScopes()) {
+                scopes.add(scope.reload(config, serverAddress));
+            }
+            reloaded = new ScopeIndex(scopes);
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            throw new IOException("Configuration refusée, rien n'a été rechargé: " + e.getMessage(), e);
+        }
+        
+        this.offerTimeout = timeout;
+        this.declineQuarantine = quarantine;
+        this.rapidCommit = Boolean.parseBoolean(config.getProperty("dhcp.rapid.commit", "false").trim());
+        this.config = config;
+        this.scopeIndex = reloaded;
+        for (Scope scope : reloaded.getScopes()) {
+            scope.getPool().setOfferTimeout(timeout);
+            scope.getPool().setDeclineQuarantine(quarantine);
+            log("Configuration rechargée - " + scope
+                + ", DNS: " + scope.getDnsServer().getHostAddress());
+        }
+    }
+    
+    /**
+     * Étendue servant un message : celle de l'agent relais (giaddr) s'il y en a un,
+     * l'étendue par défaut sinon. Retourne null si aucun sous-réseau ne correspond.
+     */
+    private Scope selectScope(DHCPMessage message) {
+        InetAddress relay = message.getRelayAddress();
+        if (relay == null) {
+            return scopeIndex.getDefault();
+        }
+        Scope scope = scopeIndex.lookup(DHCPCodec.toInt(relay));
+        if (scope == null) {
+            log("Aucune étendue pour l'agent relais " + relay.getHostAddress() + " - message de "
+                + message.getClientId() + " ignoré");
+        }
+        return scope;
+    }
+    
+    /**
+     * Étendues servies (l'étendue par défaut en premier)
+     */
+    public List<Scope> getScopes() {
+        return scopeIndex.getScopes();
+    }
+    
+    /**
+     * Traite un message reçu du réseau et écrit la réponse encodée dans le buffer
+     * à partir des réponses pré-encodées (point d'entrée commun aux transports TCP et UDP).
+     * Retourne false si aucune réponse ne doit être envoyée.
+     */
+    public boolean handleMessage(DHCPMessage message, ByteBuffer out) {
+        if (!active) {
+            return false;
+        }
+        Scope scope = selectScope(message);
+        if (scope == null) {
+            return false;
+        }
+        int relay = DHCPCodec.toInt(message.getRelayAddress());
+        switch (message.getMessageType()) {
+            case DISCOVER: {
+                DiscoverMessage discover = (DiscoverMessage) message;
+                int offeredIP = offerAddress(scope, discover);
+                if (offeredIP == 0) {
+                    return false;
+                }
+                if (isRapidCommit(discover)) {
+                    if (!rapidCommit(scope, discover, DHCPCodec.toAddress(offeredIP))) {
+                        return false;
+                    }
+                    scope.getRapidAckTemplate().writeTo(out, message.getTransactionId(), offeredIP,
+                                                        relay, message.getClientId());
+                    return true;
+                }
+                scope.getOfferTemplate().writeTo(out, message.getTransactionId(), offeredIP,
+                                                 relay, message.getClientId());
+                return true;
+            }
+            case REQUEST: {
+                RequestMessage request = (RequestMessage) message;
+                RequestOutcome outcome = renewRequest(scope, request) ? RequestOutcome.ACK : acceptRequest(scope, request);
+                if (outcome == RequestOutcome.IGNORE) {
+                    return false;
+                }
+                if (outcome == RequestOutcome.NAK) {
+                    scope.getNakTemplate().writeTo(out, message.getTransactionId(), 0, relay, message.getClientId());
+                    return true;
+                }
+                scope.getAckTemplate().writeTo(out, message.getTransactionId(), DHCPCodec.toInt(request.getRequestedIP()),
+                                               relay, message.getClientId());
+                return true;
+            }
+            case RELEASE:
+                releaseAddress(scope, (ReleaseMessage) message);
+                return false; // Pas de réponse à un RELEASE
+            case DECLINE:
+                declineAddress(scope, (DeclineMessage) message);
+                return false; // Pas de réponse à un DECLINE
+            case INFORM: {
+                Scope informed = informScope(scope, (InformMessage) message);
+                if (informed == null) {
+                    return false;
+                }
+                informed.getInformTemplate().writeTo(out, message.getTransactionId(), 0, relay, message.getClientId());
+                return true;
+            }
+            default:
+                log("Type de message non supporté: " + message.getMessageType());
+                return false;
+        }
+    }
+    
+    /**
+     * Traite un message DISCOVER du client : retourne un OFFER, ou directement un
+     * ACK (bail enregistré) si le client et le serveur acceptent le Rapid Commit
+     */
+    public DHCPMessage handleDiscover(DiscoverMessage discover) {
+        if (!active) {
+            return null;
+        }
+        Scope scope = selectScope(discover);
+        int offeredIP = scope == null ? 0 : offerAddress(scope, discover);
+        if (offeredIP == 0) {
             return null;
         }
+        InetAddress availableIP = DHCPCodec.toAddress(offeredIP);
+        if (isRapidCommit(discover)) {
+            if (!rapidCommit(scope, discover, availableIP)) {
+                return null;
+            }
+            AckMessage ack = new AckMessage(discover.getClientId(), availableIP, scope.getSubnetMask(),
+                                            scope.getDefaultGateway(), scope.getDnsServer(), scope.getLeaseDuration());
+            ack.setRapidCommit(true);
+            ack.setServerAddress(serverAddress);
+            ack.setTransactionId(discover.getTransactionId());
+            ack.setRelayAddress(discover.getRelayAddress());
+            return ack;
+        }
         
         // Création du message OFFER
         OfferMessage offer = new OfferMessage(
             discover.getClientId(),
             availableIP,
-            subnetMask,
-            defaultGateway,
-            dnsServer,
-            defaultLeaseDuration
+            scope.getSubnetMask(),
+            scope.getDefaultGateway(),
+            scope.getDnsServer(),
+            scope.getLeaseDuration()
         );
         offer.setServerAddress(serverAddress);
-        
-        log("Envoi OFFER au client " + discover.getClientId() + " - IP proposée: " + availableIP.getHostAddress());
+        offer.setTransactionId(discover.getTransactionId());
+        offer.setRelayAddress(discover.getRelayAddress());
         return offer;
     }
     
     /**
-     * Traite un message REQUEST du client
+     * Traite un message REQUEST du client : retourne un ACK, un NAK si le REQUEST
+     * adressé à ce serveur ne peut pas être honoré, ou null s'il est ignoré
      */
-    public AckMessage handleRequest(RequestMessage request) {
-        log("Réception REQUEST du client: " + request.getClientId() + " pour IP: " + request.getRequestedIP().getHostAddress());
-        
-        // Vérification que le serveur correspond
-        if (!serverAddress.equals(request.getServerAddress())) {
-            log("REQUEST ignoré - serveur différent");
+    public DHCPMessage handleRequest(RequestMessage request) {
+        if (!active) {
             return null;
         }
-        
-        // Attribution de l'adresse IP
-        boolean assigned = ipPool.assignIP(request.getClientId(), request.getRequestedIP(), defaultLeaseDuration);
-        if (!assigned) {
-            log("ERREUR: Impossible d'attribuer l'IP " + request.getRequestedIP().getHostAddress() + " au client " + request.getClientId());
+        Scope scope = selectScope(request);
+        if (scope == null) {
             return null;
         }
+        RequestOutcome outcome = renewRequest(scope, request) ? RequestOutcome.ACK : acceptRequest(scope, request);
+        if (outcome == RequestOutcome.IGNORE) {
+            return null;
+        }
+        if (outcome == RequestOutcome.NAK) {
+            NakMessage nak = new NakMessage(request.getClientId(), NAK_UNAVAILABLE);
+            nak.setServerAddress(serverAddress);
+            nak.setTransactionId(request.getTransactionId());
+            nak.setRelayAddress(request.getRelayAddress());
+            return nak;
+        }
         
         // Création du message ACK
         AckMessage ack = new AckMessage(
             request.getClientId(),
             request.getRequestedIP(),
-            subnetMask,
-            defaultGateway,
-            dnsServer,
-            defaultLeaseDuration
+            scope.getSubnetMask(),
+            scope.getDefaultGateway(),
+            scope.getDnsServer(),
+            scope.getLeaseDuration()
         );
         ack.setServerAddress(serverAddress);
-        
-        log("Envoi ACK au client " + request.getClientId() + " - IP attribuée: " + request.getRequestedIP().getHostAddress());
+        ack.setTransactionId(request.getTransactionId());
+        ack.setRelayAddress(request.getRelayAddress());
+        return ack;
+    }
+    
+    /**
+     * Traite un message RELEASE du client (pas de réponse) ; retourne true si l'adresse a été libérée
+     */
+    public boolean handleRelease(ReleaseMessage release) {
+        if (!active) {
+            return false;
+        }
+        Scope scope = selectScope(release);
+        return scope != null && releaseAddress(scope, release);
+    }
+    
+    /**
+     * Traite un message DECLINE du client (pas de réponse) ; retourne true si l'adresse a été mise en quarantaine
+     */
+    public boolean handleDecline(DeclineMessage decline) {
+        if (!active) {
+            return false;
+        }
+        Scope scope = selectScope(decline);
+        return scope != null && declineAddress(scope, decline);
+    }
+    
+    /**
+     * Traite un message INFORM du client : ACK portant les options du réseau,
+     * sans adresse ni bail, ou null
+     */
+    public AckMessage handleInform(InformMessage inform) {
+        if (!active) {
+            return null;
+        }
+        Scope scope = selectScope(inform);
+        scope = scope == null ? null : informScope(scope, inform);
+        if (scope == null) {
+            return null;
+        }
+        AckMessage ack = new AckMessage(inform.getClientId(), null, scope.getSubnetMask(),
+                                        scope.getDefaultGateway(), scope.getDnsServer(), 0);
+        ack.setServerAddress(serverAddress);
+        ack.setTransactionId(inform.getTransactionId());
+        ack.setRelayAddress(inform.getRelayAddress());
         return ack;
     }
     
     /**
-     * Affiche les adresses IP disponibles
+     * Choisit l'adresse à proposer en réponse à un DISCOVER (IPv4 en entier, 0 si
+     * aucune) ; comme les renouvellements, chaque DISCOVER n'est journalisé qu'au
+     * niveau DEBUG, aucun message n'est donc construit au niveau par défaut
+     */
+    private int offerAddress(Scope scope, DiscoverMessage discover) {
+        boolean debug = logger.isEnabled(AsyncLogger.Level.DEBUG);
+        if (cluster != null && !cluster.serves(scope, discover.getClientId())) {
+            if (debug) {
+                logger.debug("DISCOVER du client " + discover.getClientId() + " laissé à un autre nœud de la grappe");
+            }
+            return 0;
+        }
+        if (debug) {
+            logger.debug("Réception DISCOVER du client: " + discover.getClientId());
+        }
+        
+        // Recherche d'une IP disponible
+        int availableIP = scope.getPool().getAvailableAddress(discover.getClientId());
+        if (availableIP == 0) {
+            log("ERREUR: Aucune adresse IP disponible pour le client " + discover.getClientId()
+                + " (étendue " + scope.getDisplayName() + ")");
+            return 0;
+        }
+        
+        if (debug && !isRapidCommit(discover)) {
+            logger.debug("Envoi OFFER au client " + discover.getClientId() + " - IP proposée: "
+                         + DHCPCodec.toAddress(availableIP).getHostAddress());
+        }
+        return availableIP;
+    }
+    
+    private boolean isRapidCommit(DiscoverMessage discover) {
+        return rapidCommit && discover.isRapidCommit();
+    }
+    
+    /**
+     * Rapid Commit : enregistre aussitôt le bail de l'adresse réservée par
+     * offerAddress, comme l'aurait fait le REQUEST (échange en deux messages)
+     */
+    private boolean rapidCommit(Scope scope, DiscoverMessage discover, InetAddress ip) {
+        IPPool pool = scope.getPool();
+        if (!pool.assignIP(discover.getClientId(), ip, scope.getLeaseDuration())) {
+            log("ERREUR: Impossible d'attribuer l'IP " + ip.getHostAddress() + " au client " + discover.getClientId()
+                + " (Rapid Commit)");
+            pool.cancelOffer(discover.getClientId());
+            return false;
+        }
+        log("Envoi ACK (Rapid Commit) au client " + discover.getClientId() + " - IP attribuée: " + ip.getHostAddress());
+        return true;
+    }
+    
+    /**
+     * Chemin rapide d'un REQUEST de renouvellement : si le client est déjà titulaire
+     * du bail demandé, seule l'échéance est repoussée (pas de journalisation au niveau INFO)
+     */
+    private boolean renewRequest(Scope scope, RequestMessage request) {
+        if (!isServerAddress(request.getServerAddress())
+            || !scope.getPool().renewLease(request.getClientId(), DHCPCodec.toInt(request.getRequestedIP()),
+                                           scope.getLeaseDuration())) {
+            return false;
+        }
+        if (logger.isEnabled(AsyncLogger.Level.DEBUG)) {
+            logger.debug("Bail renouvelé pour le client " + request.getClientId());
+        }
+        return true;
+    }
+    
+    /**
+     * Suite à donner à un REQUEST
+     */
+    private enum RequestOutcome {
+        ACK,    // bail enregistré
+        NAK,    // adressé à ce serveur mais impossible à honorer : le client recommence aussitôt
+        IGNORE  // destiné à un autre serveur ou nœud de la grappe : pas de réponse
+    }
+    
+    /**
+     * Vérifie un REQUEST et enregistre le bail correspondant
+     */
+    private RequestOutcome acceptRequest(Scope scope, RequestMessage request) {
+        InetAddress requestedIP = request.getRequestedIP();
+        log("Réception REQUEST du client: " + request.getClientId() + " pour IP: "
+            + (requestedIP != null ? requestedIP.getHostAddress() : "aucune"));
+        
+        // Vérification que le serveur correspond
+        if (!isServerAddress(request.getServerAddress())) {
+            log("REQUEST ignoré - serveur différent");
+            scope.getPool().cancelOffer(request.getClientId()); // Le client a choisi une autre offre
+            return RequestOutcome.IGNORE;
+        }
+        if (requestedIP == null) {
+            log("Envoi NAK au client " + request.getClientId() + " - aucune adresse demandée");
+            return RequestOutcome.NAK;
+        }
+        if (cluster != null && !cluster.owns(scope, requestedIP)) {
+            log("REQUEST ignoré - adresse gérée par un autre nœud de la grappe");
+            return RequestOutcome.IGNORE;
+        }
+        
+        // Attribution de l'adresse IP
+        boolean assigned = scope.getPool().assignIP(request.getClientId(), requestedIP, scope.getLeaseDuration());
+        if (!assigned) {
+            log("Envoi NAK au client " + request.getClientId() + " - impossible d'attribuer l'IP " + requestedIP.getHostAddress());
+            return RequestOutcome.NAK;
+        }
+        
+        log("Envoi ACK au client " + request.getClientId() + " - IP attribuée: " + requestedIP.getHostAddress());
+        return RequestOutcome.ACK;
+    }
+    
+    /**
+     * Libère l'adresse rendue par un RELEASE adressé à ce serveur
+     */
+    private boolean releaseAddress(Scope scope, ReleaseMessage release) {
+        log("Réception RELEASE du client: " + release.getClientId());
+        if (!isServerAddress(release.getServerAddress()) || release.getReleasedIP() == null) {
+            log("RELEASE ignoré - serveur différent ou adresse absente");
+            return false;
+        }
+        if (!scope.getPool().releaseIP(release.getClientId(), release.getReleasedIP())) {
+            log("RELEASE ignoré - le client " + release.getClientId() + " ne détient pas l'IP "
+                + release.getReleasedIP().getHostAddress());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Met en quarantaine l'adresse refusée par un DECLINE adressé à ce serveur
+     */
+    private boolean declineAddress(Scope scope, DeclineMessage decline) {
+        log("Réception DECLINE du client: " + decline.getClientId());
+        if (!isServerAddress(decline.getServerAddress()) || decline.getDeclinedIP() == null) {
+            log("DECLINE ignoré - serveur différent ou adresse absente");
+            return false;
+        }
+        if (!scope.getPool().declineIP(decline.getClientId(), decline.getDeclinedIP())) {
+            log("DECLINE ignoré - le client " + decline.getClientId() + " ne détient pas l'IP "
+                + decline.getDeclinedIP().getHostAddress());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Étendue dont un INFORM demande les options : sans agent relais, celle du
+     * sous-réseau de l'adresse du client (ciaddr). Retourne null si ce serveur ne répond pas.
+     */
+    private Scope informScope(Scope scope, InformMessage inform) {
+        if (cluster != null && !cluster.serves(scope, inform.getClientId())) {
+            return null; // Un seul nœud de la grappe répond
+        }
+        log("Réception INFORM du client: " + inform.getClientId());
+        if (inform.getRelayAddress() == null && inform.getClientIP() != null) {
+            Scope local = scopeIndex.lookup(DHCPCodec.toInt(inform.getClientIP()));
+            if (local != null) {
+                return local;
+            }
+        }
+        return scope;
+    }
+    
+    /**
+     * Affiche les adresses IP disponibles, regroupées en plages contiguës
      */
     public void showAvailableIPs() {
         System.out.println("\n=== ADRESSES IP DISPONIBLES ===");
-        java.util.List<InetAddress> availableIPs = ipPool.getAvailableIPs();
-        if (availableIPs.isEmpty()) {
-            System.out.println("Aucune adresse IP disponible");
-        } else {
-            System.out.println("Nombre d'adresses disponibles: " + availableIPs.size());
-            for (InetAddress ip : availableIPs) {
-                System.out.println("  - " + ip.getHostAddress());
+        List<Scope> scopes = getScopes();
+        for (Scope scope : scopes) {
+            int free = scope.getPool().getStats().getFree();
+            if (scopes.size() > 1) {
+                System.out.println("Étendue " + scope.getDisplayName() + ":");
+            }
+            if (free == 0) {
+                System.out.println("Aucune adresse IP disponible");
+            } else {
+                System.out.println("Nombre d'adresses disponibles: " + free);
+                java.util.List<AddressRange> ranges = scope.getPool().getAvailableRanges(MAX_DISPLAYED_RANGES);
+                for (AddressRange range : ranges) {
+                    System.out.println("  - " + range);
+                }
+                if (ranges.size() == MAX_DISPLAYED_RANGES) {
+                    System.out.println("  ... (affichage limité à " + MAX_DISPLAYED_RANGES + " plages)");
+                }
             }
         }
         System.out.println();
@@ -158,26 +869,46 @@ public class DHCPServer {
      */
     public void showActiveLeases() {
         System.out.println("\n=== BAUX ACTIFS ===");
-        java.util.List<Lease> activeLeases = ipPool.getActiveLeases();
-        if (activeLeases.isEmpty()) {
-            System.out.println("Aucun bail actif");
-        } else {
-            System.out.println("Nombre de baux actifs: " + activeLeases.size());
-            for (Lease lease : activeLeases) {
-                System.out.println("  - " + lease.toString());
+        List<Scope> scopes = getScopes();
+        for (Scope scope : scopes) {
+            java.util.List<Lease> activeLeases = scope.getPool().getActiveLeases();
+            if (scopes.size() > 1) {
+                System.out.println("Étendue " + scope.getDisplayName() + ":");
+            }
+            if (activeLeases.isEmpty()) {
+                System.out.println("Aucun bail actif");
+            } else {
+                System.out.println("Nombre de baux actifs: " + activeLeases.size());
+                for (Lease lease : activeLeases) {
+                    System.out.println("  - " + lease.toString());
+                }
             }
         }
         System.out.println();
     }
     
     /**
-     * Démarre la tâche de nettoyage automatique des baux expirés
+     * Nettoie les baux expirés de toutes les étendues ; retourne le nombre d'adresses libérées
+     */
+    public int cleanExpiredLeases() {
+        int expired = 0;
+        for (Scope scope : getScopes()) {
+            expired += scope.getPool().cleanExpiredLeases();
+        }
+        return expired;
+    }
+    
+    /**
+     * Démarre la tâche de nettoyage automatique des baux expirés.
+     * Le coût ne dépend que du nombre de baux échus, la vérification est donc faite chaque seconde.
      */
     private void startLeaseCleanupTask() {
         scheduler.scheduleAtFixedRate(() -> {
-            log("Nettoyage automatique des baux expirés...");
-            ipPool.cleanExpiredLeases();
-        }, 60, 60, TimeUnit.SECONDS); // Vérification toutes les minutes
+            int expired = cleanExpiredLeases();
+            if (expired > 0) {
+                log("Nettoyage automatique: " + expired + " bail(s) expiré(s) libéré(s)");
+            }
+        }, 1, 1, TimeUnit.SECONDS);
     }
     
     /**
@@ -192,6 +923,7 @@ public class DHCPServer {
         System.out.println("  'available' - Afficher les adresses IP disponibles");
         System.out.println("  'leases' - Afficher les baux actifs");
         System.out.println("  'clean' - Nettoyer les baux expirés");
+        System.out.println("  'reload' - Recharger les options de configuration");
         System.out.println("  'quit' - Arrêter le serveur");
         System.out.println("================================================\n");
         
@@ -207,43 +939,45 @@ public class DHCPServer {
                     showActiveLeases();
                     break;
                 case "clean":
-                    ipPool.cleanExpiredLeases();
+                    cleanExpiredLeases();
                     System.out.println("Nettoyage des baux expirés effectué.\n");
                     break;
+                case "reload":
+                    reloadCommand();
+                    break;
                 case "quit":
                     shutdown();
                     return;
                 default:
-                    System.out.println("Commande inconnue. Tapez 'available', 'leases', 'clean' ou 'quit'.\n");
+                    System.out.println("Commande inconnue. Tapez 'available', 'leases', 'clean', 'reload' ou 'quit'.\n");
             }
         }
     }
     
     /**
-     * Initialise le système de logs
+     * Commande 'reload' de l'interface
      */
-    private void initializeLogger() {
+    protected void reloadCommand() {
         try {
-            File logDir = new File("logs");
-            if (!logDir.exists()) {
-                logDir.mkdirs();
-            }
-            FileWriter fw = new FileWriter("logs/server.log", true);
-            logWriter = new PrintWriter(fw, true);
+            reloadConfiguration();
+            System.out.println("Configuration rechargée.\n");
         } catch (IOException e) {
-            System.err.println("Erreur lors de l'initialisation des logs: " + e.getMessage());
+            System.out.println("Erreur lors du rechargement: " + e.getMessage() + "\n");
         }
     }
     
     /**
-     * Écrit un message dans les logs
+     * Écrit un message dans les logs (asynchrone)
      */
-    private void log(String message) {
-        String logMessage = "[" + LocalDateTime.now() + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
+    protected void log(String message) {
+        logger.info(message);
+    }
+    
+    /**
+     * Retourne la configuration chargée par initialize()
+     */
+    public Properties getConfig() {
+        return config;
     }
     
     /**
@@ -254,9 +988,33 @@ public class DHCPServer {
         if (scheduler != null) {
             scheduler.shutdown();
         }
-        if (logWriter != null) {
-            logWriter.close();
+        if (replication != null) {
+            replication.close();
+        }
+        if (standby != null) {
+            standby.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        if (!stores.isEmpty()) {
+            checkpoint();
+        }
+        for (LeaseStore store : stores) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log("Erreur lors de la fermeture de la base des baux: " + e.getMessage());
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log("Erreur lors de la fermeture du journal: " + e.getMessage());
+            }
         }
+        logger.flush();
         System.out.println("Serveur arrêté.");
     }
 }
\ No newline at end of file
@@ -1,35 +1,43 @@
 package dhcp.server;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
+import dhcp.messages.DHCPCodec;
 import dhcp.messages.DHCPMessage;
-import dhcp.messages.DiscoverMessage;
-import dhcp.messages.RequestMessage;
+import dhcp.utils.AsyncLogger;
+import dhcp.utils.FramedConnection;
+import dhcp.utils.PacketEndpoint;
 
 /**
  * Serveur DHCP avec support réseau
  */
 public class DHCPServerNetwork extends DHCPServer {
+    private static final int SINGLE_MESSAGE_TIMEOUT_MILLIS = 3000; // connexion non persistante : message attendu aussitôt
     private ServerSocket serverSocket;
-    private ExecutorService clientHandlerPool;
-    private boolean running = false;
+    private List<UdpListener> udpListeners = new ArrayList<>();
+    private RequestExecutor clientHandlerPool;
+    private volatile boolean running = false;
+    private String transport = "tcp"; // "tcp" ou "udp" (clé dhcp.transport)
+    private int idleTimeoutMillis = 30000; // fermeture des connexions TCP inactives
+    private Semaphore persistentSlots; // connexions TCP gardées ouvertes entre deux messages
     private int port = 67; // Port DHCP standard (ou utilisez 6767 pour les tests)
     
     public DHCPServerNetwork() {
         super();
-        this.clientHandlerPool = Executors.newFixedThreadPool(10);
     }
     
     /**
@@ -39,23 +47,48 @@ public class DHCPServerNetwork extends DHCPServer {
         // Initialiser la configuration
         initialize(configFile);
         
-        // Utiliser un port alternatif pour les tests (pas besoin de droits admin)
-        port = 6767;
+        // Utiliser un port alternatif pour les tests (pas besoin de droits admin) ;
+        // dhcp.port permet de lancer une paire de basculement sur une même machine
+        port = Integer.parseInt(getConfig().getProperty("dhcp.port", "6767").trim());
+        transport = getConfig().getProperty("dhcp.transport", "tcp").trim().toLowerCase();
+        idleTimeoutMillis = Integer.parseInt(getConfig().getProperty("dhcp.tcp.idle.timeout", "30")) * 1000;
+        clientHandlerPool = RequestExecutor.fromConfig(getConfig());
+        // Une connexion persistante occupe un thread de traitement jusqu'à son message
+        // suivant : leur nombre est borné bien en dessous du nombre de threads
+        persistentSlots = new Semaphore(Integer.parseInt(getConfig().getProperty("dhcp.tcp.max.persistent",
+            String.valueOf(Math.max(1, clientHandlerPool.getMaxConcurrent() / 2))).trim()));
         
         // Détecter automatiquement l'adresse IP locale
         String serverIP = getLocalNetworkIP();
         System.out.println("Adresse IP détectée automatiquement: " + serverIP);
+        InetSocketAddress bindAddress = new InetSocketAddress(InetAddress.getByName(serverIP), port);
         
-        // Utiliser cette IP au lieu de l'IP codée en dur
-        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(serverIP));
+        if ("udp".equals(transport)) {
+            openUdpListeners(bindAddress);
+        } else {
+            // Utiliser cette IP au lieu de l'IP codée en dur
+            serverSocket = new ServerSocket(port, 50, bindAddress.getAddress());
+        }
+        running = true;
     
-        System.out.println("Serveur DHCP démarré sur le port " + port);
+        System.out.println("Serveur DHCP démarré sur le port " + port + " (" + transport.toUpperCase() + ")");
         System.out.println("Adresse du serveur: " + serverIP);
         System.out.println("En attente de clients...\n");
         
         // Thread pour l'interface de commande
         new Thread(this::startCommandInterface).start();
         
+        if (!udpListeners.isEmpty()) {
+            // Shards 1..N-1 sur leurs propres threads, le shard 0 sur le thread courant
+            for (int i = 1; i < udpListeners.size(); i++) {
+                Thread shardThread = new Thread(udpListeners.get(i), "dhcp-udp-" + i);
+                shardThread.setDaemon(true);
+                shardThread.start();
+            }
+            udpListeners.get(0).run();
+            return;
+        }
+        
         // Boucle d'écoute des clients
         while (running) {
             try {
@@ -63,51 +96,83 @@ public class DHCPServerNetwork extends DHCPServer {
                 clientHandlerPool.submit(() -> handleClient(clientSocket));
             } catch (IOException e) {
                 if (running) {
-                    System.err.println("Erreur lors de l'acceptation du client: " + e.getMessage());
+                    logger.error("Erreur lors de l'acceptation du client: " + e.getMessage());
                 }
             }
         }
     }
     
     /**
-     * Gère un client connecté
+     * Ouvre les listeners UDP. Avec dhcp.udp.shards > 1, chaque shard dispose de son
+     * propre pipeline décodage/traitement/encodage : un PacketEndpoint par shard lié au
+     * même port via SO_REUSEPORT (répartition par le noyau), ou à défaut un seul
+     * canal partagé que les N shards vident en parallèle.
+     */
+    private void openUdpListeners(InetSocketAddress bindAddress) throws IOException {
+        int shards = Integer.parseInt(getConfig().getProperty("dhcp.udp.shards", "1").trim());
+        if (shards <= 0) {
+            shards = Runtime.getRuntime().availableProcessors();
+        }
+        
+        if (shards == 1) {
+            udpListeners.add(new UdpListener(this, PacketEndpoint.bind(bindAddress, false), clientHandlerPool));
+            return;
+        }
+        
+        boolean reusePort = Boolean.parseBoolean(getConfig().getProperty("dhcp.udp.reuseport", "true").trim())
+                            && PacketEndpoint.isReusePortSupported();
+        PacketEndpoint first = PacketEndpoint.bind(bindAddress, reusePort);
+        udpListeners.add(new UdpListener(0, this, first, null));
+        
+        for (int i = 1; i < shards; i++) {
+            PacketEndpoint endpoint = reusePort ? PacketEndpoint.bind(bindAddress, true) : first.share();
+            udpListeners.add(new UdpListener(i, this, endpoint, null));
+        }
+        System.out.println("Réception UDP répartie sur " + shards + " shards"
+                           + (reusePort ? " (SO_REUSEPORT)" : " (canal partagé)"));
+    }
+    
+    /**
+     * Gère un client connecté : la connexion reste ouverte et porte autant de
+     * messages que le client le souhaite, jusqu'à sa fermeture ou au délai d'inactivité.
+     * Au-delà de dhcp.tcp.max.persistent connexions ouvertes, une connexion n'est
+     * gardée que le temps d'un message (le pool du client en rouvre une au suivant).
      */
     private void handleClient(Socket clientSocket) {
-        try (ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
-             ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream())) {
+        boolean persistent = persistentSlots.tryAcquire();
+        try (FramedConnection connection = new FramedConnection(clientSocket)) {
+            connection.setReadTimeout(persistent ? idleTimeoutMillis
+                                                 : Math.min(idleTimeoutMillis, SINGLE_MESSAGE_TIMEOUT_MILLIS));
+            ByteBuffer out = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
             
             String clientIP = clientSocket.getInetAddress().getHostAddress();
-            System.out.println("Client connecté depuis: " + clientIP);
-            
-            // Lire le message du client
-            DHCPMessage message = (DHCPMessage) in.readObject();
-            DHCPMessage response = null;
+            log("Client connecté depuis: " + clientIP);
             
-            switch (message.getMessageType()) {
-                case DISCOVER:
-                    response = handleDiscover((DiscoverMessage) message);
-                    break;
-                case REQUEST:
-                    response = handleRequest((RequestMessage) message);
-                    break;
-                default:
-                    System.out.println("Type de message non supporté: " + message.getMessageType());
-            }
-            
-            // Envoyer la réponse
-            if (response != null) {
-                out.writeObject(response);
-                out.flush();
-                System.out.println("Réponse envoyée au client " + clientIP);
+            // Lire les messages du client jusqu'à la fermeture de la connexion
+            DHCPMessage message;
+            while ((message = connection.receive()) != null) {
+                out.clear();
+                
+                // Envoyer la réponse
+                if (handleMessage(message, out)) {
+                    out.flip();
+                    connection.send(out);
+                    if (logger.isEnabled(AsyncLogger.Level.DEBUG)) {
+                        logger.debug("Réponse envoyée au client " + clientIP);
+                    }
+                }
+                if (!persistent) {
+                    break; // Plus de connexion persistante disponible : le thread est rendu
+                }
             }
             
+        } catch (SocketTimeoutException e) {
+            // Connexion inactive : fermeture
         } catch (Exception e) {
-            System.err.println("Erreur lors du traitement du client: " + e.getMessage());
+            logger.error("Erreur lors du traitement du client: " + e.getMessage());
         } finally {
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                System.err.println("Erreur lors de la fermeture de la connexion: " + e.getMessage());
+            if (persistent) {
+                persistentSlots.release();
             }
         }
     }
@@ -126,6 +191,8 @@ public class DHCPServerNetwork extends DHCPServer {
         System.out.println("  'leases' - Afficher les baux actifs");
         System.out.println("  'clean' - Nettoyer les baux expirés");
         System.out.println("  'status' - Statut du serveur");
+        System.out.println("  'reload' - Recharger les options de configuration");
+        System.out.println("  'partner-down' - Déclarer le partenaire de basculement arrêté");
         System.out.println("  'quit' - Arrêter le serveur");
         System.out.println("======================================================\n");
         
@@ -141,12 +208,19 @@ public class DHCPServerNetwork extends DHCPServer {
                     showActiveLeases();
                     break;
                 case "clean":
-                    ipPool.cleanExpiredLeases();
+                    cleanExpiredLeases();
                     System.out.println("Nettoyage des baux expirés effectué.\n");
                     break;
                 case "status":
                     showServerStatus();
                     break;
+                case "reload":
+                    reloadCommand();
+                    break;
+                case "partner-down":
+                    declarePartnerDown();
+                    System.out.println("Partenaire déclaré hors service: attributions sans restriction.\n");
+                    break;
                 case "quit":
                     stopServer();
                     return;
@@ -163,10 +237,46 @@ public class DHCPServerNetwork extends DHCPServer {
         try {
             System.out.println("\n=== STATUT DU SERVEUR ===");
             System.out.println("Adresse IP: " + InetAddress.getLocalHost().getHostAddress());
-            System.out.println("Port: " + port);
-            System.out.println("État: " + (running ? "Actif" : "Arrêté"));
-            System.out.println("Clients actifs: " + ipPool.getActiveLeases().size());
-            System.out.println("IPs disponibles: " + ipPool.getAvailableIPs().size());
+            System.out.println("Port: " + port + " (" + transport.toUpperCase() + ")");
+            System.out.println("État: " + (!running ? "Arrêté" : isActive() ? "Actif" : "Secours (en attente)")
+                               + (isRenewOnly() ? ", renouvellements seulement (partenaire injoignable)" : ""));
+            if (getReplication() != null) {
+                System.out.println("Réplication vers " + getReplication().getPeer() + ": "
+                                   + (getReplication().isConnected() ? "connectée, retard " + getReplication().getLag()
+                                      + " changement(s)" : "déconnectée"));
+            }
+            if (getStandby() != null) {
+                System.out.println("Réplication reçue (port " + getStandby().getPort() + "): "
+                                   + getStandby().getApplied() + " changement(s) appliqué(s)"
+                                   + (getStandby().hasFailedOver() ? ", relève effectuée" : ""));
+            }
+            Cluster cluster = getCluster();
+            if (cluster != null) {
+                StringBuilder nodes = new StringBuilder();
+                for (int node = 0; node < cluster.size(); node++) {
+                    nodes.append(node == 0 ? "" : ", ").append(node).append(node == cluster.getSelf() ? " (ce nœud)"
+                                 : cluster.isAlive(node) ? " joignable" : " muet");
+                }
+                System.out.println("Grappe: nœud " + cluster.getSelf() + " sur " + cluster.size() + " - " + nodes);
+                for (Scope scope : getScopes()) {
+                    System.out.println("Étendue " + scope.getDisplayName() + ": " + cluster.getOwnedCount(scope)
+                                       + " adresse(s) possédée(s) par ce nœud");
+                }
+            }
+            System.out.println("Traitement: " + clientHandlerPool.getMode() + " (limite " + clientHandlerPool.getMaxConcurrent() + ")");
+            System.out.println("Requêtes en cours: " + clientHandlerPool.getInFlight());
+            System.out.println("Requêtes en attente: " + clientHandlerPool.getQueued());
+            if (persistentSlots != null) {
+                System.out.println("Connexions TCP persistantes disponibles: " + persistentSlots.availablePermits());
+            }
+            for (Scope scope : getScopes()) {
+                System.out.println("Étendue " + scope.getDisplayName() + ": " + scope.getPool().getStats());
+            }
+            for (UdpListener listener : udpListeners) {
+                System.out.println("Shard UDP " + listener.getShardId() + ": reçus=" + listener.getPacketsReceived()
+                                   + ", envoyés=" + listener.getPacketsSent()
+                                   + ", rejetés=" + listener.getPacketsDropped());
+            }
             System.out.println("========================\n");
         } catch (UnknownHostException e) {
             System.err.println("Erreur lors de l'obtention de l'adresse IP: " + e.getMessage());
@@ -182,7 +292,12 @@ public class DHCPServerNetwork extends DHCPServer {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-            clientHandlerPool.shutdown();
+            for (UdpListener listener : udpListeners) {
+                listener.close();
+            }
+            if (clientHandlerPool != null) {
+                clientHandlerPool.shutdown();
+            }
             shutdown();
         } catch (IOException e) {
             System.err.println("Erreur lors de l'arrêt du serveur: " + e.getMessage());
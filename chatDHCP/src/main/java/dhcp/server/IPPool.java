@@ -2,141 +2,790 @@ package dhcp.server;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.utils.AsyncLogger;
 
 /**
- * Gère le pool d'adresses IP disponibles et les baux actifs
+ * Gère le pool d'adresses IP disponibles et les baux actifs.
+ * Les adresses libres sont une bitmap indexée par position dans la plage, les
+ * baux une table en tableaux parallèles indexée de la même façon.
+ * Aucune méthode ne prend de verrou global : une adresse libre est prise par
+ * compare-and-set dans la bitmap, et le titulaire d'une position est enregistré
+ * par compare-and-set dans la table des baux, qui garantit un seul titulaire.
+ * Une adresse proposée par un OFFER est réservée au client pour une courte
+ * durée ; sans REQUEST avant l'échéance, elle est récupérée comme un bail expiré.
+ * Une adresse réservée statiquement à un client est retirée de la bitmap et ne
+ * peut être proposée qu'à lui. Un client qui revient après la fin de son bail
+ * retrouve si possible sa dernière adresse (cache d'affinité).
+ * Une adresse refusée par un DECLINE (déjà utilisée sur le réseau) est mise en
+ * quarantaine : retirée au client mais pas rendue à la bitmap avant l'échéance.
+ * Avec un journal (LeaseJournal), chaque attribution, renouvellement et
+ * libération n'est confirmé qu'une fois écrit sur disque. Avec une base des baux
+ * (LeaseStore), chaque bail confirmé y est aussi recopié en place, ce qui permet
+ * de redémarrer sans rejouer tout l'historique du journal. Avec la réplication
+ * (ReplicationSender), chaque changement de bail confirmé est aussi transmis au
+ * serveur de secours. Tant que le partenaire de basculement est injoignable sans
+ * être déclaré hors service, le pool est restreint aux renouvellements : il ne
+ * confirme plus que les baux déjà tenus et ne prend plus d'adresse libre.
  */
 public class IPPool {
-    private Queue<InetAddress> availableIPs;
-    private Map<String, Lease> activeLeases; // clientId -> Lease
-    private Map<InetAddress, String> ipToClient; // IP -> clientId
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+    
+    private AddressBitmap availableIPs;
+    private LeaseTable leases;
+    private int rangeStart; // première adresse de la plage (IPv4 en entier)
+    private final LeaseExpiryIndex expiryIndex = new LeaseExpiryIndex();
+    private volatile int offerTimeout = 30; // en secondes
+    private volatile int declineQuarantine = 600; // en secondes
+    private final Map<Integer, Long> quarantine = new ConcurrentHashMap<>(); // position refusée -> fin de quarantaine
+    private final Map<String, Integer> reservations = new ConcurrentHashMap<>(); // client -> position réservée
+    private final Map<Integer, String> reservedBy = new ConcurrentHashMap<>();   // position réservée -> client
+    private volatile AffinityCache affinity = new AffinityCache(4096);
+    private volatile LeaseJournal journal;
+    private volatile LeaseStore store;
+    private volatile ReplicationSender replication;
+    private volatile boolean renewOnly; // partenaire injoignable : aucune nouvelle attribution
     
     public IPPool() {
-        this.availableIPs = new LinkedList<>();
-        this.activeLeases = new ConcurrentHashMap<>();
-        this.ipToClient = new ConcurrentHashMap<>();
+        this.availableIPs = new AddressBitmap(0);
+        this.leases = new LeaseTable(0);
     }
     
     /**
      * Initialise le pool avec une plage d'adresses IP
      */
     public void initializePool(String startIP, String endIP) throws UnknownHostException {
-        InetAddress start = InetAddress.getByName(startIP);
-        InetAddress end = InetAddress.getByName(endIP);
+        initializePool(startIP, endIP, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Initialise le pool sur toute la plage, mais seules les positions
+     * [fromIndex, toIndex[ sont libres au départ (tranche d'un nœud de la grappe)
+     */
+    void initializePool(String startIP, String endIP, int fromIndex, int toIndex) throws UnknownHostException {
+        long startLong = ipToLong(InetAddress.getByName(startIP));
+        long endLong = ipToLong(InetAddress.getByName(endIP));
+        if (endLong < startLong || endLong - startLong + 1 > Integer.MAX_VALUE) {
+            throw new UnknownHostException("Plage d'adresses invalide: " + startIP + " - " + endIP);
+        }
         
-        long startLong = ipToLong(start);
-        long endLong = ipToLong(end);
+        int size = (int) (endLong - startLong + 1);
+        this.rangeStart = (int) startLong;
+        this.availableIPs = new AddressBitmap(size, fromIndex, Math.min(toIndex, size));
+        this.leases = new LeaseTable(size);
+        expiryIndex.clear();
+        reservations.clear();
+        reservedBy.clear();
+        quarantine.clear();
         
-        for (long i = startLong; i <= endLong; i++) {
-            InetAddress ip = longToIP(i);
-            availableIPs.offer(ip);
+        logger.info("Pool initialisé avec " + availableIPs.freeCount() + " adresses IP");
+    }
+    
+    /**
+     * Journal des baux ; les opérations suivantes y sont écrites avant d'être confirmées
+     */
+    public void setJournal(LeaseJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Base des baux ; les baux confirmés suivants y sont recopiés (avant l'écriture
+     * au journal, pour qu'un point de reprise couvre tout segment scellé)
+     */
+    public void setStore(LeaseStore store) {
+        this.store = store;
+    }
+    
+    /**
+     * Réplication vers un serveur de secours ; les changements de bail suivants y sont transmis
+     */
+    public void setReplication(ReplicationSender replication) {
+        this.replication = replication;
+    }
+    
+    /**
+     * Restreint le pool aux baux déjà tenus (true) : un client sans bail ne reçoit plus
+     * d'adresse, le partenaire de basculement pouvant attribuer les mêmes adresses libres
+     */
+    public void setRenewOnly(boolean renewOnly) {
+        this.renewOnly = renewOnly;
+    }
+    
+    public boolean isRenewOnly() {
+        return renewOnly;
+    }
+    
+    /**
+     * Recharge les baux enregistrés dans la base (démarrage, avant setStore et le
+     * rejeu du journal) ; retourne le nombre de baux relus. Les structures du pool
+     * acceptant les accès concurrents, une grande plage est relue par tranches en parallèle.
+     */
+    int load(LeaseStore source) {
+        int size = availableIPs.size();
+        int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size >>> 16));
+        if (parts == 1) {
+            return load(source, 0, size);
         }
-        
-        System.out.println("Pool initialisé avec " + availableIPs.size() + " adresses IP");
+        ExecutorService loaders = Executors.newFixedThreadPool(parts);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                int from = (int) ((long) size * i / parts);
+                int to = (int) ((long) size * (i + 1) / parts);
+                results.add(loaders.submit(() -> load(source, from, to)));
+            }
+            int count = 0;
+            for (Future<Integer> result : results) {
+                count += result.get();
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Chargement de la base des baux interrompu", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Chargement de la base des baux impossible: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            loaders.shutdown();
+        }
+    }
+    
+    /**
+     * Recharge les baux enregistrés aux positions [from, to[ de la base
+     */
+    int load(LeaseStore source, int from, int to) {
+        return source.load(from, to, this::restoreAt);
+    }
+    
+    /**
+     * Durée de réservation d'une adresse proposée, en secondes
+     */
+    public void setOfferTimeout(int seconds) {
+        this.offerTimeout = seconds;
+    }
+    
+    /**
+     * Durée de quarantaine d'une adresse refusée par un DECLINE, en secondes
+     */
+    public void setDeclineQuarantine(int seconds) {
+        this.declineQuarantine = seconds;
+    }
+    
+    /**
+     * Taille maximale du cache d'affinité (0 = désactivé) ; le cache est vidé
+     */
+    public void setAffinityCapacity(int capacity) {
+        this.affinity = new AffinityCache(capacity);
+    }
+    
+    /**
+     * Réserve statiquement une adresse à un client : elle est retirée des adresses
+     * libres et ne sera proposée qu'à ce client. Retourne false si l'adresse est
+     * hors plage, déjà réservée ou attribuée à un autre client, ou si le client
+     * a déjà une autre réservation.
+     */
+    public boolean addReservation(String clientId, InetAddress ip) {
+        int index = indexOf(ip);
+        if (index < 0) {
+            return false;
+        }
+        String owner = reservedBy.putIfAbsent(index, clientId);
+        if (owner != null) {
+            return owner.equals(clientId);
+        }
+        Integer previous = reservations.putIfAbsent(clientId, index);
+        if (previous != null
+            || (!availableIPs.claim(index) && !clientId.equals(leases.holderOf(index)))) {
+            if (previous == null) {
+                reservations.remove(clientId, index);
+            }
+            reservedBy.remove(index, clientId);
+            return false;
+        }
+        logger.info("IP " + ip.getHostAddress() + " réservée au client " + clientId);
+        return true;
     }
     
     /**
-     * Obtient une adresse IP disponible pour un client
+     * Obtient une adresse IP disponible pour un client et la lui réserve.
+     * Ordre de recherche : réservation statique, bail ou offre en cours,
+     * dernière adresse connue du client, puis première adresse libre.
      */
-    public synchronized InetAddress getAvailableIP(String clientId) {
-        // Vérifier si le client a déjà un bail actif
-        Lease existingLease = activeLeases.get(clientId);
-        if (existingLease != null && !existingLease.isExpired()) {
-            return existingLease.getIpAddress();
+    public InetAddress getAvailableIP(String clientId) {
+        int index = allocate(clientId);
+        return index < 0 ? null : toAddress(index);
+    }
+    
+    /**
+     * Comme getAvailableIP, l'adresse étant retournée en entier (IPv4), 0 si aucune :
+     * chemin des réponses pré-encodées, sans objet InetAddress créé
+     */
+    public int getAvailableAddress(String clientId) {
+        int index = allocate(clientId);
+        return index < 0 ? 0 : rangeStart + index;
+    }
+    
+    /**
+     * Position réservée au client par getAvailableIP, ou -1
+     */
+    private int allocate(String clientId) {
+        Integer reserved = reservations.isEmpty() ? null : reservations.get(clientId);
+        
+        // Vérifier si le client a déjà un bail actif ou une réservation
+        int existing = leases.find(clientId);
+        if (existing >= 0) {
+            long deadline = leases.deadlineOf(existing);
+            if (deadline < System.currentTimeMillis()) {
+                expire(existing, deadline); // Expiré mais pas encore récupéré par l'index
+            } else if (reserved == null || existing == reserved) {
+                return existing;
+            }
+        }
+        
+        // Adresse réservée : hors de la bitmap, seule la table des baux la protège
+        if (reserved != null) {
+            if (isQuarantined(reserved)) {
+                return -1; // Adresse réservée signalée comme déjà utilisée
+            }
+            if (leases.claim(reserved, clientId)) {
+                return offer(reserved, clientId);
+            }
+            return clientId.equals(leases.holderOf(reserved)) ? reserved : -1;
+        }
+        
+        if (renewOnly) {
+            return -1; // Pas d'adresse libre tant que le partenaire peut en attribuer
         }
         
         // Nettoyer les baux expirés
         cleanExpiredLeases();
         
-        // Obtenir une nouvelle IP
-        if (availableIPs.isEmpty()) {
-            return null; // Aucune IP disponible
+        // Dernière adresse connue du client si elle est encore libre ; sinon chaque
+        // client démarre sa recherche à un endroit différent de la plage, les threads
+        // concurrents touchent donc des mots distincts
+        int index = affinity.lookup(clientId);
+        if (index < 0 || index >= availableIPs.size() || !availableIPs.claim(index)) {
+            index = availableIPs.allocateFrom(spread(clientId));
         }
-        
-        return availableIPs.poll();
+        // Un bit pris dans la bitmap donne la position : un titulaire déjà présent
+        // la garde, on passe à la suivante
+        while (index >= 0 && !leases.claim(index, clientId)) {
+            index = availableIPs.allocateFrom(index + 1);
+        }
+        if (index < 0) {
+            return -1; // Aucune IP disponible
+        }
+        return offer(index, clientId);
+    }
+    
+    /**
+     * Réserve une position prise par le client pour la durée d'une offre ; retourne la position
+     */
+    private int offer(int index, String clientId) {
+        int previous = leases.reserve(index, clientId, System.currentTimeMillis(), offerTimeout);
+        if (previous >= 0) {
+            leases.release(previous, clientId);
+            free(previous);
+            persist(previous, null, 0, 0);
+        }
+        expiryIndex.schedule(index, leases.deadlineOf(index));
+        return index;
     }
     
     /**
      * Attribue une adresse IP à un client avec un bail
      */
-    public synchronized boolean assignIP(String clientId, InetAddress ip, int leaseDuration) {
-        if (ipToClient.containsKey(ip)) {
-            return false; // IP déjà attribuée
+    public boolean assignIP(String clientId, InetAddress ip, int leaseDuration) {
+        int index = indexOf(ip);
+        if (index < 0) {
+            return false; // IP hors plage
+        }
+        long now = System.currentTimeMillis();
+        if (clientId.equals(leases.holderOf(index))) {
+            // Renouvellement : l'index d'expiration replacera la position à sa nouvelle
+            // échéance quand l'ancienne arrivera. Une réservation confirmée est replanifiée
+            // tout de suite, le bail pouvant être plus court que la réservation.
+            boolean offer = leases.isOffered(index);
+            long previousStart = leases.startOf(index);
+            long previousDeadline = leases.deadlineOf(index);
+            if (!leases.renew(index, clientId, now, leaseDuration)) {
+                return false; // Bail récupéré par le nettoyage (et peut-être repris) entre-temps
+            }
+            if (offer) {
+                expiryIndex.schedule(index, leases.deadlineOf(index));
+            }
+            if (!commit(offer ? LeaseJournal.ASSIGN : LeaseJournal.RENEW, index, clientId, now, leaseDuration)) {
+                if (offer) {
+                    undoAssign(index, clientId); // Le client recommencera par un DISCOVER
+                } else {
+                    undoRenew(index, clientId, now, leaseDuration, previousStart, previousDeadline);
+                }
+                return false;
+            }
+        } else {
+            String owner = reservedBy.isEmpty() ? null : reservedBy.get(index);
+            if (owner != null && !owner.equals(clientId)) {
+                return false; // IP réservée à un autre client
+            }
+            if (isQuarantined(index)) {
+                return false; // IP refusée par un DECLINE, encore en quarantaine
+            }
+            if (renewOnly && owner == null) {
+                return false; // Nouvelle attribution refusée tant que le partenaire est injoignable
+            }
+            // Une adresse libre est d'abord prise dans la bitmap, comme dans getAvailableIP :
+            // une adresse réservée à ce client n'y figure pas, la table des baux la protège
+            if (owner == null && !availableIPs.claim(index)) {
+                return false; // IP déjà attribuée, proposée à un autre client ou cédée
+            }
+            if (!leases.claim(index, clientId)) {
+                return false; // IP déjà tenue par un autre client
+            }
+            
+            int previous = leases.start(index, clientId, now, leaseDuration);
+            if (previous >= 0) {
+                leases.release(previous, clientId); // Le client change d'adresse
+                free(previous);
+                persist(previous, null, 0, 0);
+            }
+            expiryIndex.schedule(index, leases.deadlineOf(index));
+            if (!commit(LeaseJournal.ASSIGN, index, clientId, now, leaseDuration)) {
+                undoAssign(index, clientId);
+                return false;
+            }
         }
         
-        Lease lease = new Lease(clientId, ip, leaseDuration);
-        activeLeases.put(clientId, lease);
-        ipToClient.put(ip, clientId);
-        
-        System.out.println("IP " + ip.getHostAddress() + " attribuée au client " + clientId);
+        logger.info("IP " + ip.getHostAddress() + " attribuée au client " + clientId);
+        return true;
+    }
+    
+    /**
+     * Renouvelle sur place le bail confirmé d'un client pour l'adresse ip (IPv4 en entier) :
+     * seule l'échéance change, ni la bitmap ni l'index d'expiration ne sont touchés
+     * et aucun objet n'est créé. Retourne false si le client n'est pas titulaire
+     * de ce bail, l'appelant passe alors par assignIP.
+     */
+    public boolean renewLease(String clientId, int ip, int leaseDuration) {
+        long offset = (ip & 0xFFFFFFFFL) - (rangeStart & 0xFFFFFFFFL);
+        if (offset < 0 || offset >= leases.size()) {
+            return false;
+        }
+        int index = (int) offset;
+        if (leases.isOffered(index)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long previousStart = leases.startOf(index);
+        long previousDeadline = leases.deadlineOf(index);
+        if (!leases.renew(index, clientId, now, leaseDuration)) {
+            return false;
+        }
+        if (!commit(LeaseJournal.RENEW, index, clientId, now, leaseDuration)) {
+            undoRenew(index, clientId, now, leaseDuration, previousStart, previousDeadline);
+            return false;
+        }
         return true;
     }
     
     /**
      * Libère une adresse IP
      */
-    public synchronized void releaseIP(String clientId) {
-        Lease lease = activeLeases.remove(clientId);
-        if (lease != null) {
-            ipToClient.remove(lease.getIpAddress());
-            availableIPs.offer(lease.getIpAddress());
-            System.out.println("IP " + lease.getIpAddress().getHostAddress() + " libérée du client " + clientId);
+    public void releaseIP(String clientId) {
+        int index = leases.remove(clientId);
+        if (index >= 0) {
+            free(index);
+            affinity.remember(clientId, index);
+            commit(LeaseJournal.RELEASE, index, clientId, System.currentTimeMillis(), 0);
+            logger.info("IP " + toAddress(index).getHostAddress() + " libérée du client " + clientId);
         }
     }
     
     /**
-     * Nettoie les baux expirés
+     * Libère l'adresse ip si elle est bien celle du client (RELEASE) ; retourne
+     * false si le client ne détient pas cette adresse
      */
-    public synchronized void cleanExpiredLeases() {
-        List<String> expiredClients = new ArrayList<>();
-        
-        for (Map.Entry<String, Lease> entry : activeLeases.entrySet()) {
-            if (entry.getValue().isExpired()) {
-                expiredClients.add(entry.getKey());
+    public boolean releaseIP(String clientId, InetAddress ip) {
+        int index = indexOf(ip);
+        if (index < 0 || leases.find(clientId) != index) {
+            return false;
+        }
+        releaseIP(clientId);
+        return true;
+    }
+    
+    /**
+     * Retire au client l'adresse ip qu'il a trouvée déjà utilisée (DECLINE) et la
+     * met en quarantaine : elle ne sera plus proposée avant la fin de la quarantaine,
+     * où le nettoyage la rend à la bitmap. Retourne false si le client ne détient
+     * pas cette adresse.
+     */
+    public boolean declineIP(String clientId, InetAddress ip) {
+        int index = indexOf(ip);
+        if (index < 0 || leases.find(clientId) != index || leases.remove(clientId) != index) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long until = now + declineQuarantine * 1000L;
+        quarantine.put(index, until);
+        expiryIndex.schedule(index, until);
+        commit(LeaseJournal.RELEASE, index, clientId, now, 0);
+        logger.warn("IP " + ip.getHostAddress() + " refusée par le client " + clientId
+                    + " (déjà utilisée): en quarantaine pour " + declineQuarantine + " sec");
+        return true;
+    }
+    
+    private boolean isQuarantined(int index) {
+        return !quarantine.isEmpty() && quarantine.containsKey(index);
+    }
+    
+    /**
+     * Rend à la bitmap une adresse dont la quarantaine est échue ; retourne true si elle a été rendue
+     */
+    private boolean endQuarantine(int index, long now) {
+        Long until = quarantine.get(index);
+        if (until == null || until > now || !quarantine.remove(index, until)) {
+            return false;
+        }
+        free(index);
+        logger.info("IP " + toAddress(index).getHostAddress() + " sortie de quarantaine");
+        return true;
+    }
+    
+    /**
+     * Annule la réservation d'un client qui a accepté l'offre d'un autre serveur
+     */
+    public void cancelOffer(String clientId) {
+        int index = leases.find(clientId);
+        if (index >= 0 && leases.isOffered(index) && leases.remove(clientId) == index) {
+            free(index);
+            logger.info("Réservation de " + toAddress(index).getHostAddress() + " annulée pour le client " + clientId);
+        }
+    }
+    
+    /**
+     * Recopie une opération dans la base des baux, la transmet au secours puis
+     * l'écrit dans le journal et attend qu'elle soit sur disque ; retourne false
+     * si le journal est en échec (l'opération ne doit pas être confirmée)
+     */
+    private boolean commit(byte type, int index, String clientId, long now, int durationSeconds) {
+        long deadline = durationSeconds == 0 ? 0 : now + durationSeconds * 1000L;
+        persist(index, clientId, now, deadline);
+        replicate(type, index, clientId, now, deadline);
+        LeaseJournal j = journal;
+        if (j == null) {
+            return true;
+        }
+        long seq = j.append(type, rangeStart + index, clientId, now, deadline);
+        if (!j.awaitDurable(seq)) {
+            logger.error("Journal des baux indisponible: opération non confirmée pour le client " + clientId);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Recopie le bail d'une position dans la base des baux (échéance 0 : effacé)
+     */
+    private void persist(int index, String clientId, long startMillis, long deadlineMillis) {
+        LeaseStore s = store;
+        if (s == null) {
+            return;
+        }
+        if (deadlineMillis == 0) {
+            s.clear(index);
+        } else {
+            s.put(index, clientId, startMillis, deadlineMillis);
+        }
+    }
+    
+    /**
+     * Annule une attribution que le journal n'a pas pu rendre durable : le client
+     * reçoit un NAK, le bail est donc retiré de la mémoire, de la base et du secours
+     */
+    private void undoAssign(int index, String clientId) {
+        if (leases.find(clientId) == index && leases.remove(clientId) == index) {
+            free(index);
+        }
+        persist(index, null, 0, 0);
+        replicate(LeaseJournal.RELEASE, index, clientId, System.currentTimeMillis(), 0);
+    }
+    
+    /**
+     * Annule un renouvellement que le journal n'a pas pu rendre durable : le bail
+     * retrouve son échéance précédente, en mémoire, dans la base et sur le secours
+     */
+    private void undoRenew(int index, String clientId, long now, int durationSeconds,
+                           long previousStart, long previousDeadline) {
+        if (leases.revert(index, clientId, now + durationSeconds * 1000L, previousStart, previousDeadline)) {
+            persist(index, clientId, previousStart, previousDeadline);
+            replicate(LeaseJournal.RENEW, index, clientId, previousStart, previousDeadline);
+        }
+    }
+    
+    private void replicate(byte type, int index, String clientId, long startMillis, long deadlineMillis) {
+        ReplicationSender r = replication;
+        if (r != null) {
+            r.publish(type, rangeStart + index, clientId, startMillis, deadlineMillis);
+        }
+    }
+    
+    /**
+     * Rétablit l'effet d'un enregistrement du journal (rejeu au démarrage, avant
+     * que le journal ne soit attaché au pool). Le dernier enregistrement l'emporte.
+     */
+    void restore(byte type, String clientId, InetAddress ip, long startMillis, long deadlineMillis) {
+        int index = indexOf(ip);
+        if (index < 0) {
+            return;
+        }
+        if (type == LeaseJournal.RELEASE || type == LeaseJournal.EXPIRE) {
+            if (leases.find(clientId) == index && leases.remove(clientId) == index) {
+                free(index);
+                persist(index, null, 0, 0);
+            }
+            return;
+        }
+        restoreAt(index, clientId, startMillis, deadlineMillis);
+    }
+    
+    /**
+     * Rétablit le bail d'un client à une position (rejeu du journal ou chargement
+     * de la base), en retirant l'éventuel autre titulaire
+     */
+    void restoreAt(int index, String clientId, long startMillis, long deadlineMillis) {
+        String holder = leases.holderOf(index);
+        if (holder != null && !holder.equals(clientId)) {
+            leases.remove(holder); // Adresse reprise par un autre client depuis
+            holder = null;
+        }
+        if (holder == null) {
+            leases.claim(index, clientId);
+            availableIPs.claim(index);
+        }
+        int previous = leases.restore(index, clientId, startMillis, deadlineMillis);
+        if (previous >= 0) {
+            leases.release(previous, clientId);
+            free(previous);
+            persist(previous, null, 0, 0);
+        }
+        expiryIndex.schedule(index, deadlineMillis);
+        persist(index, clientId, startMillis, deadlineMillis);
+    }
+    
+    /**
+     * Rend une position à la bitmap, sauf si elle est réservée statiquement
+     */
+    private void free(int index) {
+        if (reservedBy.isEmpty() || !reservedBy.containsKey(index)) {
+            availableIPs.release(index);
+        }
+    }
+    
+    /**
+     * Fait expirer le bail d'une position si son échéance n'a pas changé ;
+     * l'adresse n'est rendue à la bitmap qu'une fois le titulaire retiré
+     */
+    private String expire(int index, long observedDeadline) {
+        boolean offer = leases.isOffered(index);
+        String clientId = leases.expire(index, observedDeadline);
+        if (clientId != null) {
+            free(index);
+            affinity.remember(clientId, index);
+            if (!offer) {
+                persist(index, null, 0, 0);
+                ReplicationSender r = replication;
+                if (r != null) {
+                    r.publish(LeaseJournal.EXPIRE, rangeStart + index, clientId, observedDeadline, observedDeadline);
+                }
             }
+            LeaseJournal j = journal;
+            if (j != null && !offer) {
+                // Pas d'attente : aucun client n'attend de réponse, et rejouer un bail
+                // échu sans son expiration le fait simplement expirer au démarrage
+                j.append(LeaseJournal.EXPIRE, rangeStart + index, clientId, observedDeadline, observedDeadline);
+            }
+            logger.info((offer ? "Réservation de " : "IP ") + toAddress(index).getHostAddress()
+                        + " libérée du client " + clientId);
+        }
+        return clientId;
+    }
+    
+    /**
+     * Nettoie les baux et réservations d'offre expirés : seuls les paniers échus
+     * de l'index sont visités. Retourne le nombre d'adresses libérées.
+     */
+    public int cleanExpiredLeases() {
+        long now = System.currentTimeMillis();
+        if (expiryIndex.nextDeadlineMillis() > now) {
+            return 0;
         }
         
-        for (String clientId : expiredClients) {
-            releaseIP(clientId);
-            System.out.println("Bail expiré pour le client " + clientId);
+        IntList due = new IntList();
+        expiryIndex.pollDue(now, due);
+        int expired = 0;
+        for (int i = 0; i < due.size(); i++) {
+            int index = due.get(i);
+            long deadline = leases.deadlineOf(index);
+            if (deadline == 0) {
+                if (isQuarantined(index) && endQuarantine(index, now)) {
+                    expired++;
+                }
+                continue; // Bail déjà libéré
+            }
+            if (deadline >= now) {
+                expiryIndex.schedule(index, deadline); // Renouvelé depuis : nouvelle échéance
+                continue;
+            }
+            boolean offer = leases.isOffered(index);
+            String clientId = expire(index, deadline);
+            if (clientId != null) {
+                logger.info((offer ? "Réservation expirée" : "Bail expiré") + " pour le client " + clientId);
+                expired++;
+            }
         }
+        return expired;
     }
     
     /**
      * Retourne la liste des adresses IP disponibles
      */
     public List<InetAddress> getAvailableIPs() {
-        return new ArrayList<>(availableIPs);
+        List<InetAddress> result = new ArrayList<>(availableIPs.freeCount());
+        for (int i = availableIPs.nextFree(0); i >= 0; i = availableIPs.nextFree(i + 1)) {
+            result.add(toAddress(i));
+        }
+        return result;
+    }
+    
+    /**
+     * Compteurs du pool, tenus au fil des transitions : ni parcours des baux ni nettoyage
+     */
+    public PoolStats getStats() {
+        return new PoolStats(availableIPs.freeCount(), leases.offerCount(), leases.leaseCount(),
+                             expiredPending(System.currentTimeMillis()), reservations.size(), quarantine.size());
     }
     
     /**
-     * Retourne la liste des baux actifs
+     * Baux et offres échus pas encore récupérés : seuls les paniers échus de l'index
+     * sont lus (au plus l'intervalle du nettoyage automatique), chaque position comptée une fois
+     */
+    private int expiredPending(long now) {
+        if (expiryIndex.nextDeadlineMillis() > now) {
+            return 0;
+        }
+        IntList due = new IntList();
+        expiryIndex.peekDue(now, due);
+        due.sort();
+        int count = 0;
+        for (int i = 0; i < due.size(); i++) {
+            int index = due.get(i);
+            long deadline = leases.deadlineOf(index);
+            if ((i == 0 || index != due.get(i - 1)) && deadline != 0 && deadline < now) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Adresses libres regroupées en plages contiguës, au plus limit plages ;
+     * parcourt la bitmap mot par mot sans rien prendre ni verrouiller
+     */
+    public List<AddressRange> getAvailableRanges(int limit) {
+        List<AddressRange> result = new ArrayList<>();
+        int from = availableIPs.nextFree(0);
+        while (from >= 0 && result.size() < limit) {
+            int end = availableIPs.nextUsed(from);
+            result.add(new AddressRange(rangeStart + from, rangeStart + end - 1));
+            from = availableIPs.nextFree(end);
+        }
+        return result;
+    }
+    
+    /**
+     * Retourne la liste des baux actifs (objets Lease construits pour l'affichage)
      */
     public List<Lease> getActiveLeases() {
         cleanExpiredLeases();
-        return new ArrayList<>(activeLeases.values());
+        List<Lease> result = new ArrayList<>();
+        for (int index = leases.nextAllocated(0); index < leases.size(); index = leases.nextAllocated(index + 1)) {
+            String clientId = leases.holderOf(index);
+            long deadline = leases.deadlineOf(index);
+            if (clientId != null && deadline != 0 && !leases.isOffered(index)) {
+                result.add(new Lease(clientId, toAddress(index), leases.startOf(index), deadline));
+            }
+        }
+        return result;
     }
     
     /**
-     * Utilitaires pour convertir IP en long et vice versa
+     * Retire jusqu'à max adresses libres (voisines dans la plage) pour les céder
+     * à un autre nœud de la grappe ; retourne le nombre de positions écrites dans out
      */
-    private long ipToLong(InetAddress ip) {
-        byte[] bytes = ip.getAddress();
-        long result = 0;
-        for (int i = 0; i < bytes.length; i++) {
-            result |= ((long) (bytes[i] & 0xFF)) << (8 * (3 - i));
+    int takeFreeBlock(int max, int[] out) {
+        int count = 0;
+        int from = availableIPs.nextFree(0);
+        while (count < max && from >= 0) {
+            if (availableIPs.claim(from)) {
+                out[count++] = from;
+            }
+            from = availableIPs.nextFree(from + 1);
         }
-        return result;
+        return count;
     }
     
-    private InetAddress longToIP(long ip) throws UnknownHostException {
-        byte[] bytes = new byte[4];
-        bytes[0] = (byte) ((ip >> 24) & 0xFF);
-        bytes[1] = (byte) ((ip >> 16) & 0xFF);
-        bytes[2] = (byte) ((ip >> 8) & 0xFF);
-        bytes[3] = (byte) (ip & 0xFF);
-        return InetAddress.getByAddress(bytes);
+    /**
+     * Retire une adresse libre précise pour la céder à un autre nœud de la grappe
+     */
+    boolean takeFree(int index) {
+        return availableIPs.claim(index);
+    }
+    
+    /**
+     * Ajoute des adresses libres cédées par un autre nœud de la grappe
+     */
+    void addFreeBlock(int[] indices, int count) {
+        for (int i = 0; i < count; i++) {
+            availableIPs.release(indices[i]);
+        }
+    }
+    
+    /**
+     * Position d'une adresse dans la plage, ou -1 si elle est hors plage
+     */
+    int indexOf(InetAddress ip) {
+        long offset = ipToLong(ip) - (rangeStart & 0xFFFFFFFFL);
+        return offset >= 0 && offset < availableIPs.size() ? (int) offset : -1;
+    }
+    
+    /**
+     * Point de départ de la recherche d'une adresse libre pour un client
+     */
+    private int spread(String clientId) {
+        int size = availableIPs.size();
+        return size == 0 ? 0 : (int) ((clientId.hashCode() & 0xFFFFFFFFL) % size);
+    }
+    
+    int rangeSize() {
+        return availableIPs.size();
+    }
+    
+    private InetAddress toAddress(int index) {
+        return DHCPCodec.toAddress(rangeStart + index);
+    }
+    
+    /**
+     * Utilitaire pour convertir une IP en long
+     */
+    private long ipToLong(InetAddress ip) {
+        return DHCPCodec.toInt(ip) & 0xFFFFFFFFL;
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package dhcp.server;
+
+import java.util.Arrays;
+
+/**
+ * Liste extensible d'entiers primitifs (positions dans la plage), sans boxing
+ */
+class IntList {
+    private int[] items;
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        this.items = new int[Math.max(capacity, 4)];
+    }
+
+    void add(int value) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = value;
+    }
+
+    void addAll(IntList other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.items[i]);
+        }
+    }
+
+    int get(int i) {
+        return items[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void sort() {
+        Arrays.sort(items, 0, size);
+    }
+
+    /**
+     * Recherche dichotomique ; la liste doit avoir été triée
+     */
+    boolean containsSorted(int value) {
+        return Arrays.binarySearch(items, 0, size, value) >= 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -1,7 +1,9 @@
 package dhcp.server;
 
 import java.net.InetAddress;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Représente un bail DHCP pour une adresse IP
@@ -9,54 +11,70 @@ import java.time.LocalDateTime;
 public class Lease {
     private String clientId;
     private InetAddress ipAddress;
-    private LocalDateTime startTime;
-    private LocalDateTime endTime;
+    private volatile long startMillis;
+    private volatile long expiresAtMillis; // échéance (epoch millis)
     private int duration; // en secondes
     
     public Lease(String clientId, InetAddress ipAddress, int duration) {
         this.clientId = clientId;
         this.ipAddress = ipAddress;
         this.duration = duration;
-        this.startTime = LocalDateTime.now();
-        this.endTime = startTime.plusSeconds(duration);
+        renew();
+    }
+    
+    /**
+     * Vue d'un bail de la table des baux (début et échéance en epoch millis)
+     */
+    Lease(String clientId, InetAddress ipAddress, long startMillis, long expiresAtMillis) {
+        this.clientId = clientId;
+        this.ipAddress = ipAddress;
+        this.startMillis = startMillis;
+        this.expiresAtMillis = expiresAtMillis;
+        this.duration = (int) ((expiresAtMillis - startMillis) / 1000);
     }
     
     /**
      * Vérifie si le bail a expiré
      */
     public boolean isExpired() {
-        return LocalDateTime.now().isAfter(endTime);
+        return isExpired(System.currentTimeMillis());
+    }
+    
+    public boolean isExpired(long nowMillis) {
+        return nowMillis > expiresAtMillis;
     }
     
     /**
-     * Renouvelle le bail
+     * Renouvelle le bail (l'index d'expiration le replanifie à son ancienne échéance)
      */
     public void renew() {
-        this.startTime = LocalDateTime.now();
-        this.endTime = startTime.plusSeconds(duration);
+        this.startMillis = System.currentTimeMillis();
+        this.expiresAtMillis = startMillis + duration * 1000L;
     }
     
     /**
      * Retourne le temps restant en secondes
      */
     public long getRemainingTimeSeconds() {
-        LocalDateTime now = LocalDateTime.now();
-        if (now.isAfter(endTime)) {
-            return 0;
-        }
-        return java.time.Duration.between(now, endTime).getSeconds();
+        return Math.max(0, (expiresAtMillis - System.currentTimeMillis()) / 1000);
     }
     
     // Getters
     public String getClientId() { return clientId; }
     public InetAddress getIpAddress() { return ipAddress; }
-    public LocalDateTime getStartTime() { return startTime; }
-    public LocalDateTime getEndTime() { return endTime; }
+    public LocalDateTime getStartTime() { return toDateTime(startMillis); }
+    public LocalDateTime getEndTime() { return toDateTime(expiresAtMillis); }
+    public long getStartMillis() { return startMillis; }
+    public long getExpiresAtMillis() { return expiresAtMillis; }
     public int getDuration() { return duration; }
     
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+    
     @Override
     public String toString() {
         return String.format("Bail [Client: %s, IP: %s, Début: %s, Fin: %s, Temps restant: %d sec]",
-                           clientId, ipAddress.getHostAddress(), startTime, endTime, getRemainingTimeSeconds());
+                           clientId, ipAddress.getHostAddress(), getStartTime(), getEndTime(), getRemainingTimeSeconds());
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package dhcp.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index des baux ordonné par échéance : les positions des baux sont rangées
+ * dans des paniers d'une seconde, triés par date de fin. La récupération ne visite que les paniers
+ * échus, donc un coût proportionnel au nombre de baux expirés.
+ * Un renouvellement ne touche pas l'index : le bail est simplement replacé dans
+ * un panier plus lointain quand son ancien panier arrive à échéance.
+ * L'index est découpé en segments verrouillés séparément (choisis par position),
+ * pour que les attributions concurrentes ne se disputent pas un verrou unique.
+ */
+public class LeaseExpiryIndex {
+    private static final long BUCKET_MILLIS = 1000;
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public LeaseExpiryIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Range la position d'un bail dans le panier correspondant à son échéance
+     */
+    public void schedule(int index, long deadlineMillis) {
+        stripes[index % STRIPES].schedule(index, deadlineMillis);
+    }
+
+    /**
+     * Retire les positions des paniers échus à l'instant now et les ajoute à out.
+     * Les baux renouvelés depuis leur insertion sont rendus aussi : c'est à
+     * l'appelant de les replanifier.
+     */
+    public int pollDue(long now, IntList out) {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            if (stripe.nextDeadline <= now) {
+                count += stripe.pollDue(now, out);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Échéance du premier panier, ou Long.MAX_VALUE si l'index est vide (lecture sans verrou)
+     */
+    public long nextDeadlineMillis() {
+        long next = Long.MAX_VALUE;
+        for (Stripe stripe : stripes) {
+            next = Math.min(next, stripe.nextDeadline);
+        }
+        return next;
+    }
+
+    /**
+     * Copie dans out les positions des paniers échus à l'instant now, sans les
+     * retirer (peut inclure des baux renouvelés pas encore replacés)
+     */
+    public void peekDue(long now, IntList out) {
+        for (Stripe stripe : stripes) {
+            if (stripe.nextDeadline <= now) {
+                stripe.peekDue(now, out);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.buckets.clear();
+                stripe.size = 0;
+                stripe.nextDeadline = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Panier d'un instant, arrondi au supérieur : tout bail d'un panier k expire au plus tard à k * BUCKET_MILLIS
+     */
+    private static long bucketOf(long deadlineMillis) {
+        return (deadlineMillis + BUCKET_MILLIS - 1) / BUCKET_MILLIS;
+    }
+
+    private static final class Stripe {
+        private final TreeMap<Long, IntList> buckets = new TreeMap<>();
+        private int size;
+        private volatile long nextDeadline = Long.MAX_VALUE;
+
+        synchronized void schedule(int index, long deadlineMillis) {
+            long bucket = bucketOf(deadlineMillis);
+            buckets.computeIfAbsent(bucket, b -> new IntList()).add(index);
+            size++;
+            nextDeadline = Math.min(nextDeadline, bucket * BUCKET_MILLIS);
+        }
+
+        synchronized void peekDue(long now, IntList out) {
+            for (Map.Entry<Long, IntList> entry : buckets.entrySet()) {
+                if (entry.getKey() * BUCKET_MILLIS > now) {
+                    break;
+                }
+                out.addAll(entry.getValue());
+            }
+        }
+
+        synchronized int pollDue(long now, IntList out) {
+            int count = 0;
+            Map.Entry<Long, IntList> first;
+            while ((first = buckets.firstEntry()) != null && first.getKey() * BUCKET_MILLIS <= now) {
+                buckets.pollFirstEntry();
+                out.addAll(first.getValue());
+                count += first.getValue().size();
+            }
+            size -= count;
+            nextDeadline = buckets.isEmpty() ? Long.MAX_VALUE : buckets.firstKey() * BUCKET_MILLIS;
+            return count;
+        }
+    }
+}
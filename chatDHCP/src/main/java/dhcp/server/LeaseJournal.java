@@ -0,0 +1,414 @@
+package dhcp.server;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Journal des baux sur disque (write-ahead) : chaque attribution, renouvellement,
+ * libération et expiration y est ajouté avant que l'ACK ne parte.
+ * Les appelants déposent leur enregistrement dans un tampon et attendent qu'il
+ * soit durable ; un thread d'écriture unique vide le tampon et fait un seul
+ * fsync pour tous les enregistrements arrivés pendant l'écriture précédente
+ * (group commit), si bien que le coût d'un fsync est partagé par tout un lot.
+ * Enregistrement : type(1) ip(4) début(8) échéance(8) longueur(2) client(n, ISO-8859-1) crc32(4).
+ * Le journal est découpé en segments (fichier.000001, fichier.000002, ...) : à
+ * chaque démarrage et à chaque point de reprise (rotate) un nouveau segment est
+ * ouvert, et les segments scellés déjà couverts par la base des baux (LeaseStore)
+ * peuvent être supprimés ; sans base, ils sont remplacés par l'état courant des baux (compact). Au démarrage, les segments sont rejoués dans l'ordre,
+ * chacun jusqu'à son premier enregistrement incomplet ou corrompu (écriture interrompue),
+ * et le segment est tronqué à cet endroit.
+ */
+public class LeaseJournal implements Closeable {
+    public static final byte ASSIGN = 1;
+    public static final byte RENEW = 2;
+    public static final byte RELEASE = 3;
+    public static final byte EXPIRE = 4;
+
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+    private static final int HEADER_SIZE = 23;
+    private static final int MAX_CLIENT_ID = 254; // longueur maximale de l'option 61
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Path file; // préfixe des segments
+    private final boolean fsync;
+    private final List<Path> sealed = new ArrayList<>(); // segments complets, du plus ancien au plus récent
+    private FileChannel channel; // segment courant (thread d'écriture)
+    private Path current;
+    private int nextSegment = 1;
+    private boolean rotateRequested;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasData = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE); // rempli par les appelants (sous verrou)
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);  // écrit par le thread du journal
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean failed;
+    private boolean closed;
+    private Thread writer;
+
+    /**
+     * Journal dont les segments sont file.NNNNNN ; fsync = false écrit sans
+     * forcer le passage sur disque. Les segments existants sont rejoués par replay.
+     */
+    public LeaseJournal(Path file, boolean fsync) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.fsync = fsync;
+        Files.createDirectories(this.file.getParent());
+        String prefix = this.file.getFileName() + ".";
+        try (Stream<Path> files = Files.list(this.file.getParent())) {
+            files.filter(f -> f.getFileName().toString().startsWith(prefix)
+                              && f.getFileName().toString().substring(prefix.length()).matches("\\d{6}"))
+                 .sorted()
+                 .forEach(sealed::add);
+        }
+        if (!sealed.isEmpty()) {
+            String last = sealed.get(sealed.size() - 1).getFileName().toString();
+            nextSegment = Integer.parseInt(last.substring(prefix.length())) + 1;
+        }
+        if (Files.isRegularFile(this.file)) {
+            sealed.add(0, this.file); // Journal d'un seul fichier d'une version précédente
+        }
+    }
+
+    /**
+     * Action appliquée à chaque enregistrement relu
+     */
+    public interface Replayer {
+        void apply(byte type, int ip, String clientId, long startMillis, long deadlineMillis);
+    }
+
+    /**
+     * Rejoue les segments existants dans l'ordre d'écriture puis démarre l'écriture
+     * dans un nouveau segment. Retourne le nombre d'enregistrements relus.
+     */
+    public int replay(Replayer replayer) throws IOException {
+        int count = 0;
+        for (Path segment : sealed) {
+            count += replay(segment, replayer);
+        }
+        start();
+        return count;
+    }
+
+    private int replay(Path segment, Replayer replayer) throws IOException {
+        long valid = 0;
+        int count = 0;
+        byte[] header = new byte[HEADER_SIZE];
+        byte[] id = new byte[MAX_CLIENT_ID];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 65536))) {
+            while (true) {
+                in.readFully(header);
+                ByteBuffer h = ByteBuffer.wrap(header);
+                byte type = h.get();
+                int ip = h.getInt();
+                long start = h.getLong();
+                long deadline = h.getLong();
+                int length = h.getShort() & 0xFFFF;
+                if (type < ASSIGN || type > EXPIRE || length > MAX_CLIENT_ID) {
+                    break;
+                }
+                in.readFully(id, 0, length);
+                int expected = in.readInt();
+                crc.reset();
+                crc.update(header, 0, HEADER_SIZE);
+                crc.update(id, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                replayer.apply(type, ip, new String(id, 0, length, StandardCharsets.ISO_8859_1),
+                               start, deadline);
+                valid += HEADER_SIZE + length + 4;
+                count++;
+            }
+        } catch (EOFException e) {
+            // Fin du segment (éventuellement au milieu d'un enregistrement)
+        }
+        long size = Files.size(segment);
+        if (valid < size) {
+            // Fin incomplète coupée : le segment ne contient plus que des enregistrements intacts
+            try (FileChannel torn = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                torn.truncate(valid);
+                torn.force(false);
+            }
+            logger.warn("Journal " + segment + ": fin incomplète tronquée (" + (size - valid) + " octets)");
+        }
+        return count;
+    }
+
+    /**
+     * Ouvre un nouveau segment et démarre le thread d'écriture (sans rejouer les segments existants)
+     */
+    public synchronized void start() throws IOException {
+        if (writer == null) {
+            openSegment();
+            writer = new Thread(this::writeLoop, "dhcp-journal");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Ajoute un enregistrement au tampon ; retourne son numéro de séquence, à
+     * passer à awaitDurable avant de confirmer l'opération au client
+     */
+    public long append(byte type, int ip, String clientId, long startMillis, long deadlineMillis) {
+        int length = Math.min(clientId.length(), MAX_CLIENT_ID);
+        int size = HEADER_SIZE + length + 4;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal fermé: " + file);
+            }
+            while (active.remaining() < size && !failed) {
+                hasData.signal();
+                flushed.awaitUninterruptibly(); // Tampon plein : attendre l'échange
+            }
+            if (failed) {
+                return ++appendedSeq; // Jamais durable : awaitDurable retournera false
+            }
+            encode(active, crc, type, ip, clientId, length, startMillis, deadlineMillis);
+            hasData.signal();
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void encode(ByteBuffer buffer, CRC32 crc, byte type, int ip, String clientId, int length,
+                               long startMillis, long deadlineMillis) {
+        int offset = buffer.position();
+        buffer.put(type).putInt(ip).putLong(startMillis).putLong(deadlineMillis).putShort((short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) clientId.charAt(i));
+        }
+        crc.reset();
+        crc.update(buffer.array(), offset, HEADER_SIZE + length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Attend que l'enregistrement seq (et tous ceux d'avant) soit écrit sur disque ;
+     * retourne false si le journal est en échec
+     */
+    public boolean awaitDurable(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq && !failed) {
+                flushed.awaitUninterruptibly();
+            }
+            return durableSeq >= seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Boucle du thread d'écriture : échange les tampons, écrit le lot puis un seul fsync
+     */
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSeq;
+            lock.lock();
+            boolean rotate;
+            try {
+                while (active.position() == 0 && !closed && !rotateRequested) {
+                    hasData.awaitUninterruptibly();
+                }
+                if (active.position() == 0 && closed) {
+                    return; // Fermé et tout est écrit
+                }
+                rotate = rotateRequested;
+                batch = active;
+                active = spare;
+                spare = batch;
+                batchSeq = appendedSeq;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+                batch.clear();
+                if (rotate) {
+                    openSegment(); // Les enregistrements suivants vont dans un nouveau segment
+                }
+            } catch (IOException e) {
+                logger.error("Écriture du journal " + file + " impossible: " + e.getMessage());
+                lock.lock();
+                try {
+                    failed = true;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                durableSeq = batchSeq;
+                if (rotate) {
+                    rotateRequested = false;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Scelle le segment courant : tout ce qui a été ajouté avant l'appel est écrit
+     * dans les segments scellés, la suite va dans un nouveau segment. Retourne les
+     * segments scellés, que l'appelant peut supprimer une fois leur contenu
+     * rendu durable ailleurs (LeaseStore.force).
+     */
+    public List<Path> rotate() throws IOException {
+        lock.lock();
+        try {
+            rotateRequested = true;
+            hasData.signal();
+            while (rotateRequested && !failed) {
+                flushed.awaitUninterruptibly();
+            }
+            if (failed) {
+                throw new IOException("Journal " + file + " en échec");
+            }
+        } finally {
+            lock.unlock();
+        }
+        synchronized (this) {
+            return new ArrayList<>(sealed);
+        }
+    }
+
+    /**
+     * Supprime des segments scellés (après un point de reprise)
+     */
+    public synchronized void delete(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+            sealed.remove(segment);
+        }
+    }
+
+    /**
+     * Compacte le journal quand aucune base des baux ne couvre les segments scellés
+     * (rotate) : snapshot y écrit l'état courant des baux, qui remplace le dernier
+     * segment scellé, puis les autres sont supprimés. Ce segment se rejoue avant le
+     * segment courant, dont les enregistrements, plus récents, l'emportent.
+     */
+    public void compact(List<Path> segments, Consumer<Replayer> snapshot) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        Path temporary = last.resolveSibling(last.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 checksum = new CRC32();
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            try {
+                snapshot.accept((type, ip, clientId, start, deadline) -> {
+                    int length = Math.min(clientId.length(), MAX_CLIENT_ID);
+                    try {
+                        if (buffer.remaining() < HEADER_SIZE + length + 4) {
+                            writeFully(out, buffer);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    encode(buffer, checksum, type, ip, clientId, length, start, deadline);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writeFully(out, buffer);
+            out.force(false);
+        }
+        Files.move(temporary, last, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        delete(segments.subList(0, segments.size() - 1));
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Ferme le segment courant et en ouvre un nouveau (thread d'écriture ou démarrage)
+     */
+    private synchronized void openSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            sealed.add(current);
+        }
+        current = file.resolveSibling(String.format("%s.%06d", file.getFileName(), nextSegment++));
+        channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Écrit les enregistrements en attente puis ferme le fichier
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        lock.lock();
+        try {
+            closed = true;
+            hasData.signal();
+        } finally {
+            lock.unlock();
+        }
+        synchronized (this) {
+            thread = writer;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,290 @@
+package dhcp.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Base des baux sur disque, projetée en mémoire (mmap) : un enregistrement de
+ * taille fixe par adresse de la plage, à la position de l'adresse. Les baux
+ * confirmés y sont écrits en place à chaque changement (les offres n'y vont pas),
+ * sans appel système ; force() les rend durables lors d'un point de reprise,
+ * après quoi les segments du journal antérieurs peuvent être supprimés.
+ * Enregistrement : échéance(8) début(8) longueur(1) client(254, ISO-8859-1) crc32(4),
+ * complété à 280 octets ; une échéance à 0 signifie « aucun bail ». Le champ client couvre
+ * la longueur maximale de l'option 61 : un identifiant n'est jamais tronqué, le point de
+ * reprise peut donc remplacer tous les enregistrements du journal qu'il couvre.
+ * Le crc couvre l'échéance, le début et le client : un enregistrement à moitié écrit
+ * (arrêt brutal pendant un put) est ignoré au chargement, le journal le rétablit.
+ * L'en-tête porte la plage et un bit par bloc de 4096 adresses déjà écrit, si
+ * bien que le chargement ne lit que les blocs utilisés, même sur une très grande plage.
+ * Le fichier est creux : seuls les blocs écrits occupent de la place sur disque.
+ */
+public class LeaseStore implements Closeable {
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+    private static final int MAGIC = 0x44484C53; // "DHLS"
+    private static final int VERSION = 3;
+    private static final int MAX_CLIENT_ID = 254; // longueur maximale de l'option 61, comme le journal
+    private static final int ID_OFFSET = 17;
+    private static final int CRC_OFFSET = 272;
+    private static final int RECORD_SIZE = 280;
+    private static final int BLOCK_BITS = 12; // 4096 enregistrements par bloc
+    private static final int SEGMENT_BITS = 22; // 4M enregistrements (1,1 Go) par projection
+    private static final int BLOCKS_OFFSET = 64;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int rangeStart;
+    private final int size;
+    private final long dataOffset;
+    private final MappedByteBuffer header;
+    private final AtomicReferenceArray<MappedByteBuffer> segments; // projetés au premier accès
+    private final AtomicLongArray writtenBlocks; // copie en mémoire des bits de blocs de l'en-tête
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    private LeaseStore(Path file, FileChannel channel, int rangeStart, int size) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.rangeStart = rangeStart;
+        this.size = size;
+        int blocks = (size >>> BLOCK_BITS) + 1;
+        this.dataOffset = ((BLOCKS_OFFSET + (blocks + 7) / 8 + 4095) / 4096) * 4096L;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+        this.segments = new AtomicReferenceArray<>((int) (((long) size + (1 << SEGMENT_BITS) - 1) >>> SEGMENT_BITS));
+        this.writtenBlocks = new AtomicLongArray((blocks + 63) >>> 6);
+        for (int b = 0; b < blocks; b++) {
+            if ((header.get(BLOCKS_OFFSET + (b >>> 3)) & (1 << (b & 7))) != 0) {
+                writtenBlocks.set(b >>> 6, writtenBlocks.get(b >>> 6) | 1L << b);
+            }
+        }
+    }
+
+    /**
+     * Ouvre la base d'une plage, ou la crée ; une base créée pour une autre plage
+     * ou dans un autre format est mise de côté (suffixe .old) et remplacée par une base vide
+     */
+    public static LeaseStore open(Path file, int rangeStart, int size) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        if (Files.exists(file) && !matches(file, rangeStart, size)) {
+            Path old = file.resolveSibling(file.getFileName() + ".old");
+            logger.warn("Base des baux " + file + " créée pour une autre plage ou dans un autre format, déplacée vers "
+                        + old);
+            Files.move(file, old, StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        LeaseStore store = new LeaseStore(file, channel, rangeStart, size);
+        if (created) {
+            store.header.putInt(0, MAGIC);
+            store.header.putInt(4, VERSION);
+            store.header.putInt(8, rangeStart);
+            store.header.putInt(12, size);
+            store.header.force();
+        }
+        return store;
+    }
+
+    private static boolean matches(Path file, int rangeStart, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer h = ByteBuffer.allocate(16);
+            channel.read(h, 0);
+            return h.position() == 16 && h.getInt(0) == MAGIC && h.getInt(4) == VERSION
+                && h.getInt(8) == rangeStart && h.getInt(12) == size;
+        }
+    }
+
+    /**
+     * Action appliquée à chaque bail relu
+     */
+    public interface Loader {
+        void apply(int index, String clientId, long startMillis, long deadlineMillis);
+    }
+
+    /**
+     * Relit les baux enregistrés (blocs écrits uniquement) ; retourne leur nombre
+     */
+    public int load(Loader loader) {
+        return load(0, size, loader);
+    }
+
+    /**
+     * Relit les baux enregistrés aux positions [from, to[
+     */
+    public int load(int from, int to, Loader loader) {
+        int count = 0;
+        int corrupted = 0;
+        byte[] record = new byte[ID_OFFSET + MAX_CLIENT_ID];
+        CRC32 crc = new CRC32();
+        to = Math.min(to, size);
+        for (int block = from >>> BLOCK_BITS; (long) block << BLOCK_BITS < to; block++) {
+            if ((writtenBlocks.get(block >>> 6) & (1L << block)) == 0) {
+                continue;
+            }
+            int end = (int) Math.min(to, ((long) block + 1) << BLOCK_BITS);
+            for (int index = Math.max(from, block << BLOCK_BITS); index < end; index++) {
+                MappedByteBuffer segment = segment(index);
+                int offset = offsetOf(index);
+                long deadline = segment.getLong(offset);
+                if (deadline == 0) {
+                    continue;
+                }
+                int length = Math.min(segment.get(offset + 16) & 0xFF, MAX_CLIENT_ID);
+                segment.get(offset, record, 0, ID_OFFSET + length);
+                crc.reset();
+                crc.update(record, 0, ID_OFFSET + length);
+                if ((int) crc.getValue() != segment.getInt(offset + CRC_OFFSET)) {
+                    corrupted++;
+                    continue;
+                }
+                loader.apply(index, new String(record, ID_OFFSET, length, StandardCharsets.ISO_8859_1),
+                             segment.getLong(offset + 8), deadline);
+                count++;
+            }
+        }
+        if (corrupted > 0) {
+            logger.warn("Base des baux " + file + ": " + corrupted + " enregistrement(s) corrompu(s) ignoré(s)");
+        }
+        return count;
+    }
+
+    /**
+     * Enregistre le bail confirmé d'une position (écriture en mémoire projetée,
+     * sans allocation) ; l'enregistrement est préparé dans un tampon propre au
+     * thread pour calculer son crc, et l'échéance est écrite en dernier
+     */
+    public void put(int index, String clientId, long startMillis, long deadlineMillis) {
+        markBlock(index >>> BLOCK_BITS);
+        MappedByteBuffer segment = segment(index);
+        int offset = offsetOf(index);
+        int length = Math.min(clientId.length(), MAX_CLIENT_ID);
+        Encoder encoder = encoders.get();
+        byte[] record = encoder.record;
+        putLong(record, 0, deadlineMillis);
+        putLong(record, 8, startMillis);
+        record[16] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            record[ID_OFFSET + i] = (byte) clientId.charAt(i);
+        }
+        encoder.crc.reset();
+        encoder.crc.update(record, 0, ID_OFFSET + length);
+        segment.put(offset + 8, record, 8, ID_OFFSET - 8 + length);
+        segment.putInt(offset + CRC_OFFSET, (int) encoder.crc.getValue());
+        segment.putLong(offset, deadlineMillis);
+    }
+
+    private static void putLong(byte[] record, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            record[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Efface le bail d'une position
+     */
+    public void clear(int index) {
+        if ((writtenBlocks.get(index >>> (BLOCK_BITS + 6)) & (1L << (index >>> BLOCK_BITS))) != 0) {
+            segment(index).putLong(offsetOf(index), 0);
+        }
+    }
+
+    /**
+     * Écrit sur disque toutes les modifications faites jusqu'ici (point de reprise)
+     */
+    public void force() {
+        header.force();
+        for (int s = 0; s < segments.length(); s++) {
+            MappedByteBuffer segment = segments.get(s);
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getRangeStart() {
+        return rangeStart;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int offsetOf(int index) {
+        return (index & ((1 << SEGMENT_BITS) - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * Projection du segment d'une position, créée au premier accès
+     */
+    private MappedByteBuffer segment(int index) {
+        int s = index >>> SEGMENT_BITS;
+        MappedByteBuffer segment = segments.get(s);
+        if (segment == null) {
+            synchronized (this) {
+                segment = segments.get(s);
+                if (segment == null) {
+                    long first = (long) s << SEGMENT_BITS;
+                    long length = Math.min(size - first, 1L << SEGMENT_BITS) * RECORD_SIZE;
+                    try {
+                        segment = channel.map(FileChannel.MapMode.READ_WRITE, dataOffset + first * RECORD_SIZE, length);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Projection de la base des baux impossible: " + e.getMessage(), e);
+                    }
+                    segments.set(s, segment);
+                }
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Tampon d'enregistrement et crc d'un thread écrivain
+     */
+    private static final class Encoder {
+        final byte[] record = new byte[ID_OFFSET + MAX_CLIENT_ID];
+        final CRC32 crc = new CRC32();
+    }
+
+    /**
+     * Note dans l'en-tête qu'un bloc contient des enregistrements (une fois par bloc)
+     */
+    private void markBlock(int block) {
+        if ((writtenBlocks.get(block >>> 6) & (1L << block)) != 0) {
+            return;
+        }
+        synchronized (header) {
+            int offset = BLOCKS_OFFSET + (block >>> 3);
+            header.put(offset, (byte) (header.get(offset) | (1 << (block & 7))));
+            long current;
+            do {
+                current = writtenBlocks.get(block >>> 6);
+            } while (!writtenBlocks.compareAndSet(block >>> 6, current, current | 1L << block));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package dhcp.server;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Table des baux en tableaux parallèles indexés par position dans la plage :
+ * titulaire, début et échéance (epoch millis) de chaque adresse. Aucun objet
+ * n'est créé par bail ; les objets Lease ne sont construits que pour l'affichage.
+ * Un index client (adressage ouvert, segmenté) retrouve la position d'un client.
+ * Le titulaire d'une position est pris par compare-and-set, une adresse ne peut
+ * donc avoir qu'un seul titulaire. Une échéance à 0 signifie « aucun bail ».
+ * Une position peut aussi être réservée pour une offre (OFFER) en attente de
+ * REQUEST : même titulaire et échéance, avec une durée courte.
+ * Les tableaux sont découpés en blocs de 4096 positions alloués au premier bail
+ * du bloc : une grande plage peu occupée ne coûte que les blocs effectivement utilisés.
+ * Les nombres d'offres et de baux confirmés sont tenus au fil des transitions,
+ * chacune étant décomptée par le seul appelant qui a gagné le compare-and-set.
+ */
+public class LeaseTable {
+    private static final int STRIPES = 16;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int size;
+    private final AtomicReferenceArray<Chunk> chunks; // null = aucun bail dans le bloc
+    private final ClientIndex[] clientIndex = new ClientIndex[STRIPES];
+    private final LongAdder offers = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+
+    public LeaseTable(int size) {
+        this.size = size;
+        this.chunks = new AtomicReferenceArray<>((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        for (int i = 0; i < STRIPES; i++) {
+            clientIndex[i] = new ClientIndex();
+        }
+    }
+
+    /**
+     * Réserve une position sans titulaire pour un client ; faux si elle est déjà prise
+     */
+    public boolean claim(int index, String clientId) {
+        return chunk(index).holders.compareAndSet(index & CHUNK_MASK, null, clientId);
+    }
+
+    /**
+     * Démarre (ou redémarre) le bail d'une position réservée et l'enregistre dans
+     * l'index client. Retourne l'ancienne position du client si elle était différente, sinon -1.
+     */
+    public int start(int index, String clientId, long now, int durationSeconds) {
+        return begin(index, clientId, now, now + durationSeconds * 1000L, false);
+    }
+
+    /**
+     * Réserve une position réservée pour une offre pendant timeoutSeconds ;
+     * même valeur de retour que start
+     */
+    public int reserve(int index, String clientId, long now, int timeoutSeconds) {
+        return begin(index, clientId, now, now + timeoutSeconds * 1000L, true);
+    }
+
+    /**
+     * Rétablit un bail relu sur disque, avec son début et son échéance d'origine :
+     * démarre le bail d'une position réservée, ou met à jour celui de son titulaire
+     * actuel. Même valeur de retour que start.
+     */
+    public int restore(int index, String clientId, long startMillis, long deadlineMillis) {
+        Chunk chunk = chunk(index);
+        int i = index & CHUNK_MASK;
+        if (chunk.deadlines.get(i) == 0) {
+            return begin(index, clientId, startMillis, deadlineMillis, false);
+        }
+        chunk.startMillis[i] = startMillis;
+        chunk.deadlines.set(i, deadlineMillis);
+        if (chunk.offered.compareAndSet(i, 1, 0)) {
+            offers.decrement();
+            confirmed.increment();
+        }
+        return -1;
+    }
+
+    private int begin(int index, String clientId, long now, long deadlineMillis, boolean offer) {
+        Chunk chunk = chunk(index);
+        int i = index & CHUNK_MASK;
+        chunk.startMillis[i] = now;
+        chunk.offered.set(i, offer ? 1 : 0);
+        chunk.deadlines.set(i, deadlineMillis);
+        (offer ? offers : confirmed).increment();
+        int previous = stripeOf(clientId).put(clientId, index);
+        return previous != index ? previous : -1;
+    }
+
+    /**
+     * Repousse l'échéance du bail du client à une position (et confirme une
+     * réservation d'offre) ; échoue si le bail a été récupéré entre-temps par le
+     * nettoyage, ou repris par un autre client depuis que l'appelant l'a vu
+     */
+    public boolean renew(int index, String clientId, long now, int durationSeconds) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        if (chunk == null) {
+            return false;
+        }
+        int i = index & CHUNK_MASK;
+        long deadline;
+        do {
+            deadline = chunk.deadlines.get(i);
+            // Titulaire relu après l'échéance : une reprise entre-temps change l'échéance et fait échouer le CAS
+            if (deadline == 0 || !clientId.equals(chunk.holders.get(i))) {
+                return false;
+            }
+        } while (!chunk.deadlines.compareAndSet(i, deadline, now + durationSeconds * 1000L));
+        if (!clientId.equals(chunk.holders.get(i))) {
+            return false; // Reprise tombée sur la même échéance à la milliseconde près : pas d'ACK
+        }
+        chunk.startMillis[i] = now; // Seulement si le renouvellement a gagné : un bail récupéré garde son début
+        if (chunk.offered.compareAndSet(i, 1, 0)) {
+            offers.decrement(); // Offre confirmée
+            confirmed.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Annule un renouvellement qui n'a pas pu être journalisé : remet le début et
+     * l'échéance d'avant, si l'échéance est toujours celle posée par ce
+     * renouvellement (sinon le bail a été renouvelé ou récupéré depuis)
+     */
+    public boolean revert(int index, String clientId, long renewedDeadline, long startMillis, long deadlineMillis) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        if (chunk == null) {
+            return false;
+        }
+        int i = index & CHUNK_MASK;
+        if (!clientId.equals(chunk.holders.get(i))
+            || !chunk.deadlines.compareAndSet(i, renewedDeadline, deadlineMillis)) {
+            return false;
+        }
+        chunk.startMillis[i] = startMillis;
+        return true;
+    }
+
+    /**
+     * Vrai si la position est une réservation d'offre non confirmée
+     */
+    public boolean isOffered(int index) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk != null && chunk.offered.get(index & CHUNK_MASK) != 0;
+    }
+
+    /**
+     * Position du bail d'un client, ou -1
+     */
+    public int find(String clientId) {
+        return stripeOf(clientId).get(clientId);
+    }
+
+    /**
+     * Termine le bail d'un client et libère sa position ; retourne la position ou -1
+     */
+    public int remove(String clientId) {
+        int index = stripeOf(clientId).remove(clientId);
+        if (index >= 0) {
+            release(index, clientId);
+        }
+        return index;
+    }
+
+    /**
+     * Libère une position qui n'est plus référencée par l'index client
+     * (ancienne adresse d'un client qui en a changé)
+     */
+    public void release(int index, String clientId) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        if (chunk != null) {
+            int i = index & CHUNK_MASK;
+            // L'identifiant reçu n'est pas forcément l'instance enregistrée : CAS sur celle-ci
+            String holder = chunk.holders.get(i);
+            if (clientId.equals(holder)) {
+                chunk.deadlines.set(i, 0);
+                if (chunk.holders.compareAndSet(i, holder, null)) {
+                    uncount(chunk, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fait expirer le bail d'une position si son échéance observée est toujours
+     * d'actualité ; retourne le titulaire libéré ou null (bail renouvelé ou déjà libéré)
+     */
+    public String expire(int index, long observedDeadline) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        int i = index & CHUNK_MASK;
+        String clientId = chunk == null ? null : chunk.holders.get(i);
+        if (clientId == null || !chunk.deadlines.compareAndSet(i, observedDeadline, 0)) {
+            return null;
+        }
+        stripeOf(clientId).remove(clientId, index);
+        if (chunk.holders.compareAndSet(i, clientId, null)) {
+            uncount(chunk, i);
+        }
+        return clientId;
+    }
+
+    /**
+     * Nombre de réservations d'offre en cours
+     */
+    public int offerCount() {
+        return (int) offers.sum();
+    }
+
+    /**
+     * Nombre de baux confirmés (y compris échus mais pas encore récupérés)
+     */
+    public int leaseCount() {
+        return (int) confirmed.sum();
+    }
+
+    private void uncount(Chunk chunk, int i) {
+        (chunk.offered.getAndSet(i, 0) != 0 ? offers : confirmed).decrement();
+    }
+
+    public String holderOf(int index) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.holders.get(index & CHUNK_MASK);
+    }
+
+    public long startOf(int index) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk.startMillis[index & CHUNK_MASK];
+    }
+
+    /**
+     * Échéance du bail d'une position, 0 si aucun bail
+     */
+    public long deadlineOf(int index) {
+        Chunk chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk.deadlines.get(index & CHUNK_MASK);
+    }
+
+    /**
+     * Première position >= from appartenant à un bloc alloué (seules ces positions
+     * peuvent avoir un bail), ou size() s'il n'y en a plus
+     */
+    public int nextAllocated(int from) {
+        for (int c = from >>> CHUNK_BITS; c < chunks.length(); c++) {
+            if (chunks.get(c) != null) {
+                return Math.max(from, c << CHUNK_BITS);
+            }
+        }
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Bloc d'une position, alloué au premier bail
+     */
+    private Chunk chunk(int index) {
+        int c = index >>> CHUNK_BITS;
+        Chunk chunk = chunks.get(c);
+        if (chunk == null) {
+            chunks.compareAndSet(c, null, new Chunk());
+            chunk = chunks.get(c);
+        }
+        return chunk;
+    }
+
+    private ClientIndex stripeOf(String clientId) {
+        return clientIndex[(clientId.hashCode() >>> 28) % STRIPES];
+    }
+
+    /**
+     * Bloc de CHUNK_SIZE positions : titulaire, début et échéance de chacune
+     */
+    private static final class Chunk {
+        final AtomicReferenceArray<String> holders = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final long[] startMillis = new long[CHUNK_SIZE];
+        final AtomicLongArray deadlines = new AtomicLongArray(CHUNK_SIZE);
+        final AtomicIntegerArray offered = new AtomicIntegerArray(CHUNK_SIZE); // réservation d'offre (1) ou bail confirmé (0)
+    }
+
+    /**
+     * Segment de l'index client : table à adressage ouvert de positions (+1),
+     * la clé étant retrouvée par holderOf. 0 = vide, -1 = supprimé.
+     */
+    private final class ClientIndex {
+        private int[] slots = new int[64];
+        private int used; // entrées occupées ou supprimées
+        private int live;
+
+        synchronized int get(String clientId) {
+            int slot = locate(clientId);
+            return slot >= 0 ? slots[slot] - 1 : -1;
+        }
+
+        synchronized int put(String clientId, int index) {
+            int slot = locate(clientId);
+            if (slot >= 0) {
+                int previous = slots[slot] - 1;
+                slots[slot] = index + 1;
+                return previous;
+            }
+            if ((used + 1) * 2 > slots.length) {
+                rehash(live * 4 + 64);
+            }
+            int mask = slots.length - 1;
+            for (int i = clientId.hashCode() & mask; ; i = (i + 1) & mask) {
+                if (slots[i] <= 0) {
+                    if (slots[i] == 0) {
+                        used++;
+                    }
+                    slots[i] = index + 1;
+                    live++;
+                    return -1;
+                }
+            }
+        }
+
+        synchronized int remove(String clientId) {
+            int slot = locate(clientId);
+            if (slot < 0) {
+                return -1;
+            }
+            int index = slots[slot] - 1;
+            slots[slot] = -1;
+            live--;
+            return index;
+        }
+
+        synchronized void remove(String clientId, int index) {
+            int slot = locate(clientId);
+            if (slot >= 0 && slots[slot] == index + 1) {
+                slots[slot] = -1;
+                live--;
+            }
+        }
+
+        private int locate(String clientId) {
+            int mask = slots.length - 1;
+            for (int i = clientId.hashCode() & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (slots[i] > 0 && clientId.equals(holderOf(slots[i] - 1))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void rehash(int minCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(minCapacity, 64) - 1) << 1;
+            int[] old = slots;
+            slots = new int[capacity];
+            used = live;
+            int mask = capacity - 1;
+            for (int value : old) {
+                if (value > 0) {
+                    int i = holderOf(value - 1).hashCode() & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dhcp.server;
+
+/**
+ * Instantané des compteurs d'un pool : adresses libres, offres en attente de
+ * REQUEST, baux confirmés, baux échus pas encore récupérés, réservations
+ * statiques et adresses en quarantaine après un DECLINE. Obtenu en temps constant, sans parcourir les baux ni prendre de verrou global.
+ */
+public class PoolStats {
+    private final int free;
+    private final int offered;
+    private final int leased;
+    private final int expiredPending;
+    private final int reserved;
+    private final int quarantined;
+
+    public PoolStats(int free, int offered, int leased, int expiredPending, int reserved) {
+        this(free, offered, leased, expiredPending, reserved, 0);
+    }
+
+    public PoolStats(int free, int offered, int leased, int expiredPending, int reserved, int quarantined) {
+        this.free = free;
+        this.offered = offered;
+        this.leased = leased;
+        this.expiredPending = expiredPending;
+        this.reserved = reserved;
+        this.quarantined = quarantined;
+    }
+
+    public int getFree() { return free; }
+    public int getOffered() { return offered; }
+    public int getLeased() { return leased; }
+    public int getExpiredPending() { return expiredPending; }
+    public int getReserved() { return reserved; }
+    public int getQuarantined() { return quarantined; }
+
+    @Override
+    public String toString() {
+        return String.format("libres=%d, offres=%d, baux=%d, échus en attente=%d, réservées=%d, en quarantaine=%d",
+                             free, offered, leased, expiredPending, reserved, quarantined);
+    }
+}
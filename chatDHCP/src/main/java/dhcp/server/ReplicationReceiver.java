@@ -0,0 +1,286 @@
+package dhcp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Côté secours de la réplication : reçoit le flux du serveur actif
+ * (ReplicationSender) et applique chaque changement de bail à ses pools, qui
+ * restent ainsi à jour sans répondre aux clients. Sans lot ni battement de cœur
+ * pendant le délai de basculement (y compris si l'actif ne s'est jamais
+ * connecté), le secours prend la relève : onFailover est appelé une seule fois
+ * et plus aucune connexion n'est acceptée.
+ * À la fin d'un instantané, les baux du secours dont l'adresse n'y figure pas sont
+ * libérés (changements perdus par l'actif pendant une coupure ou un débordement).
+ * Chaque trame est vérifiée en entier avant d'être appliquée ; une trame mal formée
+ * fait fermer la connexion, le secours attendant alors la reconnexion de l'actif.
+ */
+public class ReplicationReceiver implements Closeable {
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+
+    private final int port;
+    private final int failoverMillis;
+    private final LeaseJournal.Replayer applier;
+    private final ReplicationSender.Snapshot current; // baux actuels du secours
+    private final Runnable onFailover;
+    private IntList snapshotIps; // adresses de l'instantané en cours de réception, sinon null
+    private volatile ServerSocket serverSocket;
+    private volatile Socket connection; // connexion de l'actif en cours
+    private volatile long lastContactMillis;
+    private volatile long applied;
+    private volatile InetAddress partner; // identifiant annoncé par le serveur actif
+    private volatile boolean failedOver;
+    private volatile boolean closed;
+
+    public ReplicationReceiver(int port, int failoverMillis, LeaseJournal.Replayer applier,
+                               ReplicationSender.Snapshot current, Runnable onFailover) {
+        this.port = port;
+        this.failoverMillis = failoverMillis;
+        this.applier = applier;
+        this.current = current;
+        this.onFailover = onFailover;
+    }
+
+    /**
+     * Ouvre le port de réplication et démarre la réception et la surveillance de l'actif
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        lastContactMillis = System.currentTimeMillis();
+        Thread receiver = new Thread(this::acceptLoop, "dhcp-replication");
+        receiver.setDaemon(true);
+        receiver.start();
+        Thread watchdog = new Thread(this::watchLoop, "dhcp-replication-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        logger.info("Serveur de secours: réplication attendue sur le port " + port);
+    }
+
+    /**
+     * Accepte le serveur actif (une connexion à la fois, reprise après coupure)
+     */
+    private void acceptLoop() {
+        while (!closed && !failedOver) {
+            try (Socket socket = serverSocket.accept()) {
+                connection = socket;
+                if (failedOver || closed) {
+                    return;
+                }
+                receive(socket);
+            } catch (IOException e) {
+                if (!closed && !failedOver) {
+                    logger.warn("Réplication depuis le serveur actif interrompue: "
+                                + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+                }
+            } catch (RuntimeException e) {
+                // Le thread de réception doit survivre pour accepter la reconnexion
+                logger.error("Erreur inattendue sur la réplication reçue: " + e);
+            }
+        }
+    }
+
+    /**
+     * Lit les lots du serveur actif, les applique et acquitte chacun avec le nombre
+     * d'enregistrements appliqués depuis le début de la connexion
+     */
+    private void receive(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(failoverMillis);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (in.readInt() != ReplicationSender.MAGIC) {
+            throw new ProtocolException("Pair de réplication inconnu: " + socket.getRemoteSocketAddress());
+        }
+        partner = DHCPCodec.toAddress(in.readInt());
+        lastContactMillis = System.currentTimeMillis();
+        logger.info("Réplication reçue du serveur actif " + socket.getRemoteSocketAddress());
+        snapshotIps = null; // Instantané interrompu avec la connexion précédente : rien n'est retiré
+        long sessionApplied = 0;
+        byte[] frame = new byte[64 * 1024];
+        try {
+            while (!failedOver && !closed) {
+                int count = in.readInt();
+                int length = in.readInt();
+                if (length < 0 || length > ReplicationSender.MAX_FRAME_SIZE
+                    || count < 0 || count > length / ReplicationSender.HEADER_SIZE) {
+                    throw new ProtocolException("Trame de réplication invalide: " + count
+                                                + " enregistrement(s) sur " + length + " octets");
+                }
+                if (length > frame.length) {
+                    frame = new byte[length];
+                }
+                in.readFully(frame, 0, length);
+                lastContactMillis = System.currentTimeMillis();
+                ByteBuffer records = ByteBuffer.wrap(frame, 0, length);
+                validate(records, count);
+                apply(records, count);
+                applied += count;
+                sessionApplied += count;
+                out.writeLong(sessionApplied);
+                out.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            // Plus de battement de cœur : la surveillance décide du basculement
+        }
+    }
+
+    /**
+     * Vérifie qu'une trame contient exactement count enregistrements bien formés,
+     * sans rien appliquer (comme les blocs d'un GRANT de la grappe)
+     */
+    static void validate(ByteBuffer records, int count) throws ProtocolException {
+        int start = records.position();
+        int position = start;
+        for (int i = 0; i < count; i++) {
+            if (records.remaining() < ReplicationSender.HEADER_SIZE) {
+                throw new ProtocolException("Trame de réplication tronquée: enregistrement " + i + " sur " + count);
+            }
+            byte type = records.get(position);
+            int length = records.get(position + ReplicationSender.HEADER_SIZE - 1) & 0xFF;
+            if (type < LeaseJournal.ASSIGN || type > ReplicationSender.SNAPSHOT_END) {
+                throw new ProtocolException("Type d'enregistrement de réplication inconnu: " + type);
+            }
+            position += ReplicationSender.HEADER_SIZE + length;
+            if (position > records.limit()) {
+                throw new ProtocolException("Trame de réplication tronquée: enregistrement " + i + " sur " + count);
+            }
+            records.position(position);
+        }
+        if (records.hasRemaining()) {
+            throw new ProtocolException("Trame de réplication: " + records.remaining() + " octet(s) en trop");
+        }
+        records.position(start);
+    }
+
+    private void apply(ByteBuffer records, int count) {
+        byte[] id = new byte[ReplicationSender.MAX_CLIENT_ID];
+        for (int i = 0; i < count; i++) {
+            byte type = records.get();
+            int ip = records.getInt();
+            long startMillis = records.getLong();
+            long deadlineMillis = records.getLong();
+            int length = records.get() & 0xFF;
+            records.get(id, 0, length);
+            if (type == ReplicationSender.SNAPSHOT_BEGIN) {
+                snapshotIps = new IntList();
+            } else if (type == ReplicationSender.SNAPSHOT_END) {
+                retainSnapshot();
+            } else {
+                if (snapshotIps != null && (type == LeaseJournal.ASSIGN || type == LeaseJournal.RENEW)) {
+                    snapshotIps.add(ip);
+                }
+                applier.apply(type, ip, new String(id, 0, length, StandardCharsets.ISO_8859_1), startMillis, deadlineMillis);
+            }
+        }
+    }
+
+    /**
+     * Libère les baux du secours absents de l'instantané qui vient d'être reçu
+     */
+    private void retainSnapshot() {
+        IntList kept = snapshotIps;
+        snapshotIps = null;
+        if (kept == null) {
+            return;
+        }
+        kept.sort();
+        IntList staleIps = new IntList();
+        List<String> staleClients = new ArrayList<>();
+        current.forEach((type, ip, clientId, startMillis, deadlineMillis) -> {
+            if (!kept.containsSorted(ip)) {
+                staleIps.add(ip);
+                staleClients.add(clientId);
+            }
+        });
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < staleIps.size(); i++) {
+            applier.apply(LeaseJournal.RELEASE, staleIps.get(i), staleClients.get(i), now, 0);
+        }
+        if (staleIps.size() > 0) {
+            logger.info("Réplication: " + staleIps.size() + " bail(s) absent(s) de l'instantané de l'actif retiré(s)");
+        }
+    }
+
+    /**
+     * Bascule si l'actif est resté muet pendant le délai de basculement
+     */
+    private void watchLoop() {
+        while (!closed && !failedOver) {
+            try {
+                Thread.sleep(Math.max(10, failoverMillis / 4));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long silence = System.currentTimeMillis() - lastContactMillis;
+            if (silence >= failoverMillis && !closed) {
+                failedOver = true;
+                logger.warn("Serveur actif muet depuis " + silence + " ms: le secours prend la relève");
+                closeSocket();
+                onFailover.run();
+            }
+        }
+    }
+
+    /**
+     * Identifiant du serveur actif (reçu à la connexion), ou null
+     */
+    public InetAddress getPartner() {
+        return partner;
+    }
+
+    public long getApplied() {
+        return applied;
+    }
+
+    public boolean hasFailedOver() {
+        return failedOver;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private void closeSocket() {
+        ServerSocket s = serverSocket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+        Socket c = connection;
+        if (c != null) {
+            try {
+                c.close(); // L'actif ne reçoit plus d'acquittement
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeSocket();
+    }
+}
@@ -0,0 +1,337 @@
+package dhcp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Côté actif de la réplication : chaque changement de bail confirmé (attribution,
+ * renouvellement, libération, expiration) est déposé dans un tampon, et un thread
+ * d'envoi unique le vide vers le serveur de secours par lots, sans attendre
+ * d'acquittement entre deux lots (pipeline) ; le secours acquitte en retour le
+ * nombre d'enregistrements appliqués, ce qui donne le retard de réplication.
+ * À chaque (re)connexion, et si le tampon déborde, un instantané des baux actifs
+ * est renvoyé avant la suite du flux, encadré par SNAPSHOT_BEGIN et SNAPSHOT_END :
+ * le secours retire alors les baux absents de l'instantané, ce qui couvre les
+ * libérations et expirations perdues avec le tampon. Un lot vide sert de battement
+ * de cœur. Les compteurs d'envoi et d'acquittement repartent de 0 à chaque connexion.
+ * Trame : nombre(4) longueur(4) puis les enregistrements
+ * type(1) ip(4) début(8) échéance(8) longueur(1) client(n, ISO-8859-1).
+ */
+public class ReplicationSender implements Closeable {
+    static final int MAGIC = 0x44485250; // "DHRP"
+    static final int MAX_CLIENT_ID = 255;
+    static final byte SNAPSHOT_BEGIN = 5; // après les types du journal (ASSIGN..EXPIRE)
+    static final byte SNAPSHOT_END = 6;
+    static final int HEADER_SIZE = 22;
+    static final int MAX_FRAME_SIZE = 1024 * 1024; // un tampon d'envoi
+
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+    private static final int BUFFER_SIZE = MAX_FRAME_SIZE;
+    private static final int RETRY_MILLIS = 1000;
+
+    private final InetSocketAddress peer;
+    private final int serverId; // identifiant (adresse) de ce serveur, repris par le secours après basculement
+    private final int heartbeatMillis;
+    private final Snapshot snapshot;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasData = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE); // rempli par les pools (sous verrou)
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);  // envoyé par le thread de réplication
+    private int activeCount;
+    private boolean connected;
+    private boolean resync;
+    private volatile boolean closed;
+    private volatile long sent;
+    private volatile long acked;
+    private volatile long lastAckMillis = System.currentTimeMillis(); // dernier signe de vie du secours
+    private volatile Socket socket;
+    private Thread writer;
+
+    /**
+     * Source de l'instantané envoyé à la (re)connexion : appelle sink pour chaque bail actif
+     */
+    public interface Snapshot {
+        void forEach(LeaseJournal.Replayer sink);
+    }
+
+    public ReplicationSender(InetSocketAddress peer, int serverId, int heartbeatMillis, Snapshot snapshot) {
+        this.peer = peer;
+        this.serverId = serverId;
+        this.heartbeatMillis = heartbeatMillis;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Démarre le thread d'envoi (connexion au secours, avec nouvelles tentatives)
+     */
+    public synchronized void start() {
+        if (writer == null) {
+            writer = new Thread(this::sendLoop, "dhcp-replication");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Dépose un changement de bail ; ne bloque jamais. Sans connexion il est ignoré
+     * (l'instantané de la reconnexion le couvrira), tampon plein il est abandonné
+     * avec tout le tampon et un nouvel instantané est demandé.
+     */
+    public void publish(byte type, int ip, String clientId, long startMillis, long deadlineMillis) {
+        int length = Math.min(clientId.length(), MAX_CLIENT_ID);
+        lock.lock();
+        try {
+            if (!connected) {
+                return;
+            }
+            if (active.remaining() < HEADER_SIZE + length) {
+                active.clear();
+                activeCount = 0;
+                resync = true;
+                hasData.signal();
+                return;
+            }
+            encode(active, type, ip, clientId, length, startMillis, deadlineMillis);
+            activeCount++;
+            hasData.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void encode(ByteBuffer buffer, byte type, int ip, String clientId, int length,
+                               long startMillis, long deadlineMillis) {
+        buffer.put(type).putInt(ip).putLong(startMillis).putLong(deadlineMillis).put((byte) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) clientId.charAt(i));
+        }
+    }
+
+    /**
+     * Boucle du thread d'envoi : connexion, instantané si nécessaire, puis un lot
+     * par réveil (ou un battement de cœur à défaut de changements)
+     */
+    private void sendLoop() {
+        DataOutputStream out = null;
+        while (!closed) {
+            try {
+                if (out == null) {
+                    out = connect();
+                }
+                ByteBuffer batch;
+                int count;
+                boolean snap;
+                lock.lock();
+                try {
+                    long wait = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+                    while (activeCount == 0 && !resync && !closed && wait > 0) {
+                        wait = hasData.awaitNanos(wait);
+                    }
+                    snap = resync;
+                    resync = false;
+                    if (snap) {
+                        active.clear(); // Couvert par l'instantané qui suit
+                        activeCount = 0;
+                    }
+                    batch = active;
+                    active = spare;
+                    spare = batch;
+                    count = activeCount;
+                    activeCount = 0;
+                } finally {
+                    lock.unlock();
+                }
+                if (snap) {
+                    sendSnapshot(out);
+                }
+                batch.flip();
+                writeFrame(out, batch, count);
+                batch.clear();
+                out.flush();
+                sent += count;
+            } catch (IOException e) {
+                if (!closed && out != null) {
+                    logger.warn("Réplication vers " + peer + " interrompue: " + e.getMessage());
+                }
+                disconnect();
+                out = null;
+                sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Se connecte au secours et s'annonce ; les changements sont mis en tampon
+     * dès ce moment, l'instantané partant avant eux
+     */
+    private DataOutputStream connect() throws IOException {
+        Socket s = new Socket();
+        s.connect(peer, RETRY_MILLIS);
+        s.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 65536));
+        out.writeInt(MAGIC);
+        out.writeInt(serverId);
+        out.flush();
+        socket = s;
+        Thread reader = new Thread(() -> readAcks(s), "dhcp-replication-ack");
+        reader.setDaemon(true);
+        reader.start();
+        lock.lock();
+        try {
+            connected = true;
+            resync = true;
+        } finally {
+            lock.unlock();
+        }
+        logger.info("Réplication connectée au serveur de secours " + peer);
+        return out;
+    }
+
+    /**
+     * Envoie l'état courant des baux entre deux marqueurs, par lots de la taille du tampon
+     */
+    private void sendSnapshot(DataOutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        int[] count = {1};
+        IOException[] error = new IOException[1];
+        encode(buffer, SNAPSHOT_BEGIN, 0, "", 0, 0, 0);
+        snapshot.forEach((type, ip, clientId, startMillis, deadlineMillis) -> {
+            int length = Math.min(clientId.length(), MAX_CLIENT_ID);
+            if (error[0] != null) {
+                return;
+            }
+            if (buffer.remaining() < HEADER_SIZE + length) {
+                try {
+                    buffer.flip();
+                    writeFrame(out, buffer, count[0]);
+                } catch (IOException e) {
+                    error[0] = e;
+                    return;
+                }
+                buffer.clear();
+                sent += count[0];
+                count[0] = 0;
+            }
+            encode(buffer, type, ip, clientId, length, startMillis, deadlineMillis);
+            count[0]++;
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        if (buffer.remaining() < HEADER_SIZE) {
+            buffer.flip();
+            writeFrame(out, buffer, count[0]);
+            buffer.clear();
+            sent += count[0];
+            count[0] = 0;
+        }
+        encode(buffer, SNAPSHOT_END, 0, "", 0, 0, 0);
+        buffer.flip();
+        writeFrame(out, buffer, count[0] + 1);
+        sent += count[0] + 1;
+    }
+
+    private static void writeFrame(DataOutputStream out, ByteBuffer records, int count) throws IOException {
+        out.writeInt(count);
+        out.writeInt(records.remaining());
+        out.write(records.array(), 0, records.remaining());
+    }
+
+    /**
+     * Lit les acquittements du secours (enregistrements appliqués depuis le début de
+     * cette connexion) ; ceux d'une connexion remplacée sont ignorés
+     */
+    private void readAcks(Socket s) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()))) {
+            while (true) {
+                long count = in.readLong();
+                if (socket == s) {
+                    acked = count;
+                    lastAckMillis = System.currentTimeMillis();
+                }
+            }
+        } catch (IOException e) {
+            // Connexion fermée : le thread d'envoi se reconnecte
+        }
+    }
+
+    private void disconnect() {
+        lock.lock();
+        try {
+            connected = false;
+            active.clear();
+            activeCount = 0;
+        } finally {
+            lock.unlock();
+        }
+        Socket s = socket;
+        socket = null;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Fermeture silencieuse
+            }
+        }
+        sent = 0;
+        acked = 0;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     * Temps écoulé depuis le dernier acquittement du secours (ou la création) : seul
+     * un secours qui acquitte est sûr de ne pas avoir pris la relève
+     */
+    public long getSilenceMillis() {
+        return System.currentTimeMillis() - lastAckMillis;
+    }
+
+    /**
+     * Enregistrements envoyés mais pas encore acquittés par le secours
+     */
+    public long getLag() {
+        return Math.max(0, sent - acked);
+    }
+
+    public InetSocketAddress getPeer() {
+        return peer;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = writer;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        disconnect();
+    }
+}
@@ -0,0 +1,145 @@
+package dhcp.server;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dhcp.utils.AsyncLogger;
+
+/**
+ * Exécute le traitement des connexions et datagrammes clients.
+ * En mode "virtual", chaque tâche reçoit son propre thread virtuel et seul un
+ * sémaphore borne le nombre de traitements simultanés ; en mode "fixed", un pool
+ * de threads de taille fixe est utilisé comme auparavant ; en mode "bounded"
+ * (repli du mode "virtual" sur un JDK antérieur à 21), un pool borné à la limite
+ * de concurrence crée ses threads à la demande et les libère au repos.
+ * Les compteurs exposent les requêtes en cours et en attente.
+ */
+public class RequestExecutor {
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final String mode;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private RequestExecutor(ExecutorService executor, int maxConcurrent, String mode) {
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = "virtual".equals(mode) ? new Semaphore(maxConcurrent) : null;
+        this.mode = mode;
+    }
+
+    /**
+     * Pool de threads fixe (comportement historique)
+     */
+    public static RequestExecutor fixed(int threads) {
+        return new RequestExecutor(Executors.newFixedThreadPool(threads), threads, "fixed");
+    }
+
+    /**
+     * Un thread virtuel par tâche, avec une limite de concurrence.
+     * Sur un JDK sans threads virtuels (antérieur à 21), un pool de threads
+     * borné à la même limite est utilisé à la place : les tâches excédentaires
+     * attendent dans sa file au lieu de créer chacune un thread.
+     */
+    public static RequestExecutor virtual(int maxConcurrent) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new RequestExecutor((ExecutorService) factory.invoke(null), maxConcurrent, "virtual");
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Threads virtuels indisponibles sur ce JDK, utilisation d'un pool borné à "
+                        + maxConcurrent + " threads");
+            return bounded(maxConcurrent);
+        }
+    }
+
+    /**
+     * Pool dont les threads sont créés à la demande jusqu'à la limite, puis
+     * libérés après une minute d'inactivité
+     */
+    private static RequestExecutor bounded(int maxConcurrent) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        return new RequestExecutor(pool, maxConcurrent, "bounded");
+    }
+
+    /**
+     * Crée l'exécuteur décrit par la configuration (dhcp.handler.*)
+     */
+    public static RequestExecutor fromConfig(Properties config) {
+        String mode = config.getProperty("dhcp.handler.mode", "fixed").trim().toLowerCase();
+        if ("virtual".equals(mode)) {
+            return virtual(Integer.parseInt(config.getProperty("dhcp.handler.max.concurrent", "10000")));
+        }
+        return fixed(Integer.parseInt(config.getProperty("dhcp.handler.threads", "10")));
+    }
+
+    /**
+     * Soumet un traitement ; il reste compté "en attente" jusqu'à son démarrage effectif.
+     * Après shutdown(), lève RejectedExecutionException.
+     */
+    public void submit(Runnable task) {
+        queued.incrementAndGet();
+        Runnable counted = () -> {
+            if (permits != null) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    queued.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            queued.decrementAndGet();
+            inFlight.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        };
+        try {
+            executor.execute(counted);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Mode effectivement utilisé : "virtual", "bounded" (repli) ou "fixed"
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,77 @@
+package dhcp.server;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import dhcp.messages.DHCPCodec;
+
+/**
+ * Réponse OFFER, ACK ou NAK pré-encodée : en-tête fixe et bloc d'options constant
+ * (type, serveur, durée de bail, masque, passerelle, DNS, texte d'un NAK) sont encodés une fois ;
+ * les options nulles (et la durée de bail si elle vaut 0) sont omises.
+ * Chaque réponse copie le modèle puis ne renseigne que les champs propres au
+ * client : xid, adresse attribuée (yiaddr), agent relais (giaddr) et identifiant client.
+ */
+public class ResponseTemplate {
+    private final byte[] template;
+
+    public ResponseTemplate(int messageType, InetAddress serverAddress, int leaseDuration,
+                            InetAddress subnetMask, InetAddress defaultGateway, InetAddress dnsServer) {
+        this(messageType, serverAddress, leaseDuration, subnetMask, defaultGateway, dnsServer, false);
+    }
+
+    /**
+     * @param rapidCommit ajoute l'option 80 (ACK répondant directement à un DISCOVER)
+     */
+    public ResponseTemplate(int messageType, InetAddress serverAddress, int leaseDuration,
+                            InetAddress subnetMask, InetAddress defaultGateway, InetAddress dnsServer,
+                            boolean rapidCommit) {
+        this(messageType, serverAddress, leaseDuration, subnetMask, defaultGateway, dnsServer, rapidCommit, null);
+    }
+
+    /**
+     * NAK portant la raison du refus (option 56), comme la réponse construite par le serveur
+     */
+    public static ResponseTemplate nak(InetAddress serverAddress, String message) {
+        return new ResponseTemplate(DHCPCodec.TYPE_NAK, serverAddress, 0, null, null, null, false, message);
+    }
+
+    private ResponseTemplate(int messageType, InetAddress serverAddress, int leaseDuration,
+                             InetAddress subnetMask, InetAddress defaultGateway, InetAddress dnsServer,
+                             boolean rapidCommit, String message) {
+        ByteBuffer buffer = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        DHCPCodec.writeHeader(buffer, DHCPCodec.OP_BOOTREPLY, 0, 0, 0);
+        DHCPCodec.writeByteOption(buffer, DHCPCodec.OPT_MESSAGE_TYPE, messageType);
+        DHCPCodec.writeAddressOption(buffer, DHCPCodec.OPT_SERVER_ID, serverAddress);
+        if (rapidCommit) {
+            DHCPCodec.writeFlagOption(buffer, DHCPCodec.OPT_RAPID_COMMIT);
+        }
+        if (leaseDuration > 0) {
+            DHCPCodec.writeIntOption(buffer, DHCPCodec.OPT_LEASE_TIME, leaseDuration);
+        }
+        DHCPCodec.writeAddressOption(buffer, DHCPCodec.OPT_SUBNET_MASK, subnetMask);
+        DHCPCodec.writeAddressOption(buffer, DHCPCodec.OPT_ROUTER, defaultGateway);
+        DHCPCodec.writeAddressOption(buffer, DHCPCodec.OPT_DNS_SERVER, dnsServer);
+        DHCPCodec.writeStringOption(buffer, DHCPCodec.OPT_MESSAGE, message);
+        this.template = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(template);
+    }
+
+    /**
+     * Écrit une réponse complète à la position courante du buffer, sans allocation
+     */
+    public void writeTo(ByteBuffer out, int xid, int assignedIP, int relayIP, String clientId) {
+        int start = out.position();
+        out.put(template);
+        out.putInt(start + DHCPCodec.OFFSET_XID, xid);
+        out.putInt(start + DHCPCodec.OFFSET_YIADDR, assignedIP);
+        out.putInt(start + DHCPCodec.OFFSET_GIADDR, relayIP);
+        DHCPCodec.writeClientId(out, clientId);
+        out.put((byte) DHCPCodec.OPT_END);
+    }
+
+    public int size() {
+        return template.length;
+    }
+}
@@ -0,0 +1,207 @@
+package dhcp.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Predicate;
+
+import dhcp.messages.DHCPCodec;
+
+/**
+ * Étendue DHCP : une plage d'adresses avec son propre pool et ses options
+ * (masque, passerelle, DNS, durée de bail). Chaque étendue a son pool d'adresses, les
+ * sous-réseaux chargés ne se disputent donc pas les sous-réseaux calmes.
+ * Les clés de configuration d'une étendue nommée sont dhcp.scope.&lt;nom&gt;.&lt;clé&gt;
+ * et reprennent à défaut la valeur globale dhcp.&lt;clé&gt; ; l'étendue par défaut
+ * (nom null) n'utilise que les clés globales.
+ */
+public class Scope {
+    private final String name;
+    private final IPPool pool;
+    private final String startIP;
+    private final String endIP;
+    // Options : écrites à la construction seulement, publiées avec l'étendue par le serveur
+    private InetAddress subnetMask;
+    private InetAddress defaultGateway;
+    private InetAddress dnsServer;
+    private int leaseDuration;
+    private ResponseTemplate offerTemplate;
+    private ResponseTemplate ackTemplate;
+    private ResponseTemplate rapidAckTemplate; // ACK avec l'option 80, réponse à un DISCOVER Rapid Commit
+    private ResponseTemplate nakTemplate;
+    private ResponseTemplate informTemplate; // ACK sans adresse ni bail, réponse à un INFORM
+    private long subnetLow;  // sous-réseau desservi (bornes IPv4 non signées)
+    private long subnetHigh;
+    private long rangeLow;  // plage d'adresses du pool (bornes IPv4 non signées)
+    private long rangeHigh = -1;
+
+    public Scope(String name, IPPool pool, Properties config, InetAddress serverAddress) throws UnknownHostException {
+        this.name = name;
+        this.pool = pool;
+        this.startIP = property(config, name, "pool.start");
+        this.endIP = property(config, name, "pool.end");
+        loadOptions(config, serverAddress);
+    }
+
+    /**
+     * Même étendue (nom, pool et plage) avec les options d'une nouvelle configuration
+     */
+    private Scope(Scope previous, Properties config, InetAddress serverAddress) throws UnknownHostException {
+        this.name = previous.name;
+        this.pool = previous.pool;
+        this.startIP = previous.startIP;
+        this.endIP = previous.endIP;
+        this.rangeLow = previous.rangeLow;
+        this.rangeHigh = previous.rangeHigh;
+        loadOptions(config, serverAddress);
+    }
+
+    /**
+     * Valeur d'une clé pour une étendue, avec repli sur la clé globale
+     */
+    public static String property(Properties config, String name, String key) {
+        String global = config.getProperty("dhcp." + key);
+        return name == null ? global : config.getProperty("dhcp.scope." + name + "." + key, global);
+    }
+
+    /**
+     * Initialise le pool de l'étendue avec sa plage
+     */
+    public void initializePool() throws UnknownHostException {
+        initializePool(0, 1);
+    }
+
+    /**
+     * Initialise le pool avec toute la plage, dont seule la tranche part (sur parts
+     * tranches contiguës de tailles égales) est libre au départ : nœud d'une grappe
+     */
+    public void initializePool(int part, int parts) throws UnknownHostException {
+        if (startIP == null || endIP == null) {
+            throw new UnknownHostException("Plage non définie pour l'étendue " + getDisplayName());
+        }
+        long low = DHCPCodec.toInt(InetAddress.getByName(startIP.trim())) & 0xFFFFFFFFL;
+        long high = DHCPCodec.toInt(InetAddress.getByName(endIP.trim())) & 0xFFFFFFFFL;
+        long size = Math.max(0, high - low + 1);
+        pool.initializePool(startIP.trim(), endIP.trim(), (int) (size * part / parts), (int) (size * (part + 1) / parts));
+        this.rangeLow = low;
+        this.rangeHigh = high;
+    }
+
+    /**
+     * Vrai si l'adresse (IPv4 en entier) appartient à la plage du pool de l'étendue
+     */
+    public boolean contains(int address) {
+        long key = address & 0xFFFFFFFFL;
+        return key >= rangeLow && key <= rangeHigh;
+    }
+
+    /**
+     * Enregistre les réservations statiques de l'étendue, clé dhcp.reservations
+     * (ou dhcp.scope.&lt;nom&gt;.reservations, sans repli) : liste de client:adresse
+     * séparés par des virgules. Retourne le nombre de réservations chargées.
+     */
+    public int loadReservations(Properties config) throws UnknownHostException {
+        return loadReservations(config, ip -> true);
+    }
+
+    /**
+     * Enregistre les réservations statiques dont l'adresse est gérée localement
+     * (nœud d'une grappe : les autres le sont par le nœud qui possède l'adresse)
+     */
+    public int loadReservations(Properties config, Predicate<InetAddress> local) throws UnknownHostException {
+        int count = 0;
+        for (Map.Entry<String, InetAddress> entry : readReservations(config).entrySet()) {
+            if (!local.test(entry.getValue())) {
+                continue;
+            }
+            if (!pool.addReservation(entry.getKey(), entry.getValue())) {
+                throw new IllegalArgumentException("Réservation refusée pour l'étendue " + getDisplayName()
+                    + " (hors plage ou en conflit): " + entry.getKey() + ":" + entry.getValue().getHostAddress());
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Lit les réservations statiques de l'étendue (client -> adresse) sans les enregistrer
+     */
+    public Map<String, InetAddress> readReservations(Properties config) throws UnknownHostException {
+        String key = name == null ? "dhcp.reservations" : "dhcp.scope." + name + ".reservations";
+        Map<String, InetAddress> reservations = new LinkedHashMap<>();
+        for (String entry : config.getProperty(key, "").split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Réservation invalide (client:adresse attendu): " + entry);
+            }
+            reservations.put(entry.substring(0, separator).trim(),
+                             InetAddress.getByName(entry.substring(separator + 1).trim()));
+        }
+        return reservations;
+    }
+
+    /**
+     * Nouvelle étendue portant les options relues ; celle-ci reste inchangée
+     * tant que le serveur n'a pas publié la nouvelle
+     */
+    public Scope reload(Properties config, InetAddress serverAddress) throws UnknownHostException {
+        return new Scope(this, config, serverAddress);
+    }
+
+    /**
+     * Charge les options de l'étendue et construit ses réponses pré-encodées.
+     * Le sous-réseau desservi est déduit de la passerelle et du masque.
+     */
+    private void loadOptions(Properties config, InetAddress serverAddress) throws UnknownHostException {
+        String duration = property(config, name, "lease.duration");
+        this.leaseDuration = Integer.parseInt(duration == null ? "3600" : duration.trim());
+        this.subnetMask = InetAddress.getByName(property(config, name, "subnet.mask"));
+        this.defaultGateway = InetAddress.getByName(property(config, name, "default.gateway"));
+        this.dnsServer = InetAddress.getByName(property(config, name, "dns.server"));
+
+        long mask = DHCPCodec.toInt(subnetMask) & 0xFFFFFFFFL;
+        long network = DHCPCodec.toInt(defaultGateway) & mask;
+        this.subnetLow = network;
+        this.subnetHigh = network | (~mask & 0xFFFFFFFFL);
+
+        this.offerTemplate = new ResponseTemplate(DHCPCodec.TYPE_OFFER, serverAddress, leaseDuration,
+                                                  subnetMask, defaultGateway, dnsServer);
+        this.ackTemplate = new ResponseTemplate(DHCPCodec.TYPE_ACK, serverAddress, leaseDuration,
+                                                subnetMask, defaultGateway, dnsServer);
+        this.rapidAckTemplate = new ResponseTemplate(DHCPCodec.TYPE_ACK, serverAddress, leaseDuration,
+                                                     subnetMask, defaultGateway, dnsServer, true);
+        this.nakTemplate = ResponseTemplate.nak(serverAddress, DHCPServer.NAK_UNAVAILABLE);
+        this.informTemplate = new ResponseTemplate(DHCPCodec.TYPE_ACK, serverAddress, 0,
+                                                   subnetMask, defaultGateway, dnsServer);
+    }
+
+    public String getName() { return name; }
+    public String getDisplayName() { return name == null ? "défaut" : name; }
+    public IPPool getPool() { return pool; }
+    public String getStartIP() { return startIP; }
+    public String getEndIP() { return endIP; }
+    public InetAddress getSubnetMask() { return subnetMask; }
+    public InetAddress getDefaultGateway() { return defaultGateway; }
+    public InetAddress getDnsServer() { return dnsServer; }
+    public int getLeaseDuration() { return leaseDuration; }
+    public ResponseTemplate getOfferTemplate() { return offerTemplate; }
+    public ResponseTemplate getAckTemplate() { return ackTemplate; }
+    public ResponseTemplate getRapidAckTemplate() { return rapidAckTemplate; }
+    public ResponseTemplate getNakTemplate() { return nakTemplate; }
+    public ResponseTemplate getInformTemplate() { return informTemplate; }
+    public long getSubnetLow() { return subnetLow; }
+    public long getSubnetHigh() { return subnetHigh; }
+
+    @Override
+    public String toString() {
+        return String.format("Étendue %s [%s - %s, passerelle %s/%s, bail %d sec]",
+                             getDisplayName(), startIP, endIP, defaultGateway.getHostAddress(),
+                             subnetMask.getHostAddress(), leaseDuration);
+    }
+}
@@ -0,0 +1,79 @@
+package dhcp.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index d'intervalles des étendues par sous-réseau desservi : les bornes sont
+ * triées dans des tableaux et une adresse d'agent relais (giaddr) est résolue
+ * par recherche dichotomique, en O(log n) quel que soit le nombre d'étendues.
+ * L'index est immuable et porte aussi la liste des étendues : le serveur publie
+ * l'ensemble de ses étendues en une seule écriture, et un rechargement refusé
+ * ne laisse rien de visible.
+ */
+public class ScopeIndex {
+    private final long[] lows;
+    private final long[] highs;
+    private final Scope[] scopes;
+    private final List<Scope> declared; // ordre de déclaration, l'étendue par défaut en premier
+
+    /**
+     * Construit l'index ; les sous-réseaux des étendues ne doivent pas se chevaucher
+     */
+    public ScopeIndex(List<Scope> scopeList) {
+        this.declared = Collections.unmodifiableList(new ArrayList<>(scopeList));
+        List<Scope> sorted = new ArrayList<>(scopeList);
+        sorted.sort(Comparator.comparingLong(Scope::getSubnetLow));
+        int n = sorted.size();
+        this.lows = new long[n];
+        this.highs = new long[n];
+        this.scopes = sorted.toArray(new Scope[0]);
+        for (int i = 0; i < n; i++) {
+            lows[i] = scopes[i].getSubnetLow();
+            highs[i] = scopes[i].getSubnetHigh();
+            if (i > 0 && lows[i] <= highs[i - 1]) {
+                throw new IllegalArgumentException("Sous-réseaux qui se chevauchent: étendues "
+                    + scopes[i - 1].getDisplayName() + " et " + scopes[i].getDisplayName());
+            }
+        }
+    }
+
+    /**
+     * Étendue dont le sous-réseau contient l'adresse (IPv4 en entier), ou null
+     */
+    public Scope lookup(int address) {
+        long key = address & 0xFFFFFFFFL;
+        int low = 0;
+        int high = lows.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lows[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // high = dernière étendue commençant avant l'adresse
+        return high >= 0 && key <= highs[high] ? scopes[high] : null;
+    }
+
+    /**
+     * Étendues dans leur ordre de déclaration
+     */
+    public List<Scope> getScopes() {
+        return declared;
+    }
+
+    /**
+     * Étendue par défaut (la première déclarée), ou null si l'index est vide
+     */
+    public Scope getDefault() {
+        return declared.isEmpty() ? null : declared.get(0);
+    }
+
+    public int size() {
+        return scopes.length;
+    }
+}
@@ -0,0 +1,133 @@
+package dhcp.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.DHCPMessage;
+import dhcp.utils.AsyncLogger;
+import dhcp.utils.PacketEndpoint;
+import dhcp.utils.PacketEndpoint.Packet;
+
+/**
+ * Boucle de réception UDP : un PacketEndpoint reçoit les DISCOVER/REQUEST
+ * et renvoie les OFFER/ACK à l'adresse source, sans connexion ni handshake.
+ * Les datagrammes en attente sont vidés par lots. Avec un RequestExecutor, chaque
+ * datagramme est traité par l'exécuteur ; sans exécuteur (mode shardé), le listener
+ * décode, traite et encode lui-même, indépendamment des autres shards.
+ */
+public class UdpListener implements Runnable {
+    private static final int BATCH_SIZE = 32;
+    private static final AsyncLogger logger = AsyncLogger.forFile("logs/server.log");
+
+    private final int shardId;
+    private final DHCPServer server;
+    private final PacketEndpoint endpoint;
+    private final RequestExecutor executor;
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsDropped = new AtomicLong();
+
+    public UdpListener(DHCPServer server, PacketEndpoint endpoint, RequestExecutor executor) {
+        this(0, server, endpoint, executor);
+    }
+
+    public UdpListener(int shardId, DHCPServer server, PacketEndpoint endpoint, RequestExecutor executor) {
+        this.shardId = shardId;
+        this.server = server;
+        this.endpoint = endpoint;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+        List<Packet> batch = new ArrayList<>(BATCH_SIZE);
+        ByteBuffer sendBuffer = endpoint.acquireBuffer();
+        while (endpoint.isOpen()) {
+            try {
+                batch.clear();
+                int count = endpoint.drain(batch, BATCH_SIZE, 0);
+                packetsReceived.addAndGet(count);
+
+                for (Packet packet : batch) {
+                    if (executor == null) {
+                        handlePacket(packet, sendBuffer);
+                        continue;
+                    }
+                    try {
+                        executor.submit(() -> {
+                            ByteBuffer out = endpoint.acquireBuffer();
+                            try {
+                                handlePacket(packet, out);
+                            } finally {
+                                endpoint.releaseBuffer(out);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        packetsDropped.incrementAndGet();
+                        packet.release();
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                return; // Arrêt du serveur
+            } catch (IOException e) {
+                logger.error("Erreur lors de la réception UDP: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Une erreur inattendue ne doit pas arrêter le shard (ni le thread principal pour le shard 0)
+                logger.error("Erreur inattendue dans la boucle UDP du shard " + shardId + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Décode un datagramme, le traite et renvoie la réponse éventuelle.
+     * Toute erreur est limitée à ce datagramme : il est compté comme ignoré et
+     * son tampon est toujours rendu.
+     */
+    private void handlePacket(Packet packet, ByteBuffer out) {
+        SocketAddress source = packet.source();
+        try {
+            DHCPMessage message = DHCPCodec.decode(packet.payload());
+            out.clear();
+            if (server.handleMessage(message, out)) {
+                out.flip();
+                endpoint.send(out, source);
+                packetsSent.incrementAndGet();
+            }
+        } catch (IOException e) {
+            packetsDropped.incrementAndGet();
+            logger.warn("Datagramme ignoré depuis " + source + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            packetsDropped.incrementAndGet();
+            logger.error("Erreur lors du traitement d'un datagramme depuis " + source + ": " + e);
+        } finally {
+            packet.release();
+        }
+    }
+
+    public int getShardId() {
+        return shardId;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived.get();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getPacketsDropped() {
+        return packetsDropped.get();
+    }
+
+    public void close() throws IOException {
+        endpoint.close();
+    }
+}
@@ -0,0 +1,204 @@
+package dhcp.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Journalisation asynchrone partagée : les threads de traitement déposent leurs
+ * messages dans un tampon circulaire borné, un thread d'écriture unique les vide
+ * par lots vers la console et le fichier (un seul descripteur par fichier).
+ * Quand le tampon est plein, le message est soit abandonné (et compté), soit
+ * l'appelant attend qu'une place se libère.
+ */
+public class AsyncLogger {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 256;
+    private static final Map<String, AsyncLogger> LOGGERS = new ConcurrentHashMap<>();
+
+    private final String path;
+    private final BlockingQueue<Entry> ring;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile Level level = Level.INFO;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile boolean console = true;
+    private Writer fileWriter;
+
+    private AsyncLogger(String path, int capacity) {
+        this.path = path;
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        openFile();
+        Thread writer = new Thread(this::writeLoop, "log-writer-" + new File(path).getName());
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+    }
+
+    /**
+     * Retourne le logger associé à un fichier (créé au premier appel)
+     */
+    public static AsyncLogger forFile(String path) {
+        return LOGGERS.computeIfAbsent(path, p -> new AsyncLogger(p, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Applique les clés dhcp.log.level (DEBUG, INFO, WARN, ERROR),
+     * dhcp.log.overflow (DROP, BLOCK) et dhcp.log.console (true/false)
+     */
+    public void configure(Properties config) {
+        level = Level.valueOf(config.getProperty("dhcp.log.level", level.name()).trim().toUpperCase());
+        overflowPolicy = OverflowPolicy.valueOf(config.getProperty("dhcp.log.overflow", overflowPolicy.name()).trim().toUpperCase());
+        console = Boolean.parseBoolean(config.getProperty("dhcp.log.console", String.valueOf(console)).trim());
+    }
+
+    public boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public void debug(String message) { log(Level.DEBUG, message); }
+    public void info(String message) { log(Level.INFO, message); }
+    public void warn(String message) { log(Level.WARN, message); }
+    public void error(String message) { log(Level.ERROR, message); }
+
+    /**
+     * Dépose un message dans le tampon ; l'horodatage est pris ici, le formatage
+     * et les entrées/sorties sont faits par le thread d'écriture
+     */
+    public void log(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), messageLevel, message);
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                ring.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        } else if (!ring.offer(entry)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        enqueued.incrementAndGet();
+    }
+
+    /**
+     * Attend que tous les messages déjà déposés aient été écrits (au plus 2 secondes)
+     */
+    public void flush() {
+        long target = enqueued.get();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (written.get() < target && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getPendingCount() {
+        return ring.size();
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder text = new StringBuilder(BATCH_SIZE * 96);
+        long reportedDrops = 0;
+        while (true) {
+            try {
+                batch.add(ring.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            ring.drainTo(batch, BATCH_SIZE - 1);
+
+            text.setLength(0);
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                text.append('[').append(LocalDateTime.now()).append("] [WARN] ")
+                    .append(drops - reportedDrops).append(" message(s) de log perdu(s) (tampon plein)\n");
+                reportedDrops = drops;
+            }
+            for (Entry entry : batch) {
+                entry.appendTo(text);
+            }
+            if (console) {
+                System.out.print(text);
+            }
+            writeToFile(text);
+            written.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    private void writeToFile(CharSequence text) {
+        if (fileWriter == null) {
+            return;
+        }
+        try {
+            fileWriter.append(text);
+            fileWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Erreur d'écriture dans " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void openFile() {
+        try {
+            File parent = new File(path).getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            fileWriter = new BufferedWriter(new FileWriter(path, true));
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'initialisation des logs " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        private final long timestamp;
+        private final Level level;
+        private final String message;
+
+        Entry(long timestamp, Level level, String message) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.message = message;
+        }
+
+        void appendTo(StringBuilder text) {
+            text.append('[').append(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())).append("] ");
+            if (level != Level.INFO) {
+                text.append('[').append(level).append("] ");
+            }
+            text.append(message).append('\n');
+        }
+    }
+}
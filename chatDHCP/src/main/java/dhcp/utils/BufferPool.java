@@ -0,0 +1,50 @@
+package dhcp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de ByteBuffer directs de taille fixe, réutilisés entre les paquets
+ * pour éviter une allocation par datagramme
+ */
+public class BufferPool {
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxPooled;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Retourne un buffer vide (position 0, limite = capacité)
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Rend un buffer au pool (ignoré si le pool est plein)
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else if (buffer.capacity() == bufferSize) {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
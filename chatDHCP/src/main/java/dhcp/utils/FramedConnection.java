@@ -0,0 +1,122 @@
+package dhcp.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.DHCPMessage;
+
+/**
+ * Connexion TCP persistante transportant des messages DHCP encadrés :
+ * chaque trame est une longueur sur 2 octets suivie du message encodé.
+ * Une même connexion peut porter un nombre quelconque de messages dans les deux sens.
+ */
+public class FramedConnection implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteBuffer buffer;
+    private long lastUsedMillis;
+
+    public FramedConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.buffer = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Envoie un message sous forme de trame
+     */
+    public void send(DHCPMessage message) throws IOException {
+        buffer.clear();
+        DHCPCodec.encode(message, buffer);
+        out.writeShort(buffer.position());
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Envoie sous forme de trame un message déjà encodé (contenu restant du buffer)
+     */
+    public void send(ByteBuffer encoded) throws IOException {
+        out.writeShort(encoded.remaining());
+        if (encoded.hasArray()) {
+            out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+            encoded.position(encoded.limit());
+        } else {
+            while (encoded.hasRemaining()) {
+                out.write(encoded.get());
+            }
+        }
+        out.flush();
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Lit la trame suivante, ou retourne null si le pair a fermé la connexion
+     */
+    public DHCPMessage receive() throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length > buffer.capacity()) {
+            throw new ProtocolException("Trame DHCP trop longue: " + length + " octets");
+        }
+        in.readFully(buffer.array(), 0, length);
+        buffer.clear().limit(length);
+        lastUsedMillis = System.currentTimeMillis();
+        return DHCPCodec.decode(buffer);
+    }
+
+    /**
+     * Envoie un message et attend la réponse sur la même connexion
+     */
+    public DHCPMessage exchange(DHCPMessage message) throws IOException {
+        send(message);
+        DHCPMessage response = receive();
+        if (response == null) {
+            throw new EOFException("Connexion fermée par le serveur");
+        }
+        return response;
+    }
+
+    public void setReadTimeout(int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+    }
+
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    public long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Fermeture silencieuse
+        }
+    }
+}
@@ -1,25 +1,58 @@
 package dhcp.utils;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NetworkUtils {
+    // Endpoints de longue durée : un pour l'émission, un par port d'écoute
+    private static volatile PacketEndpoint sendEndpoint;
+    private static final Map<Integer, PacketEndpoint> receiveEndpoints = new ConcurrentHashMap<>();
 
     public static void sendPacket(byte[] data, InetAddress address, int port) throws Exception {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
-            socket.send(packet);
-        }
+        sendEndpoint().send(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
     }
 
+    /**
+     * Reçoit un datagramme sur le port donné et retourne exactement les octets reçus.
+     * Le port reste lié entre deux appels pour ne pas perdre de paquets.
+     */
     public static byte[] receivePacket(int port) throws Exception {
-        byte[] buffer = new byte[1024];
-        try (DatagramSocket socket = new DatagramSocket(port)) {
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-            socket.receive(packet);
-            return packet.getData();
+        PacketEndpoint endpoint = receiveEndpoints.get(port);
+        if (endpoint == null) {
+            synchronized (receiveEndpoints) {
+                endpoint = receiveEndpoints.get(port);
+                if (endpoint == null) {
+                    endpoint = PacketEndpoint.bind(new InetSocketAddress(port), false);
+                    receiveEndpoints.put(port, endpoint);
+                }
+            }
+        }
+        PacketEndpoint.Packet packet = endpoint.receive(0);
+        if (packet == null) {
+            throw new IOException("Port " + port + " fermé");
+        }
+        try {
+            return packet.toByteArray();
+        } finally {
+            packet.release();
+        }
+    }
+
+    private static PacketEndpoint sendEndpoint() throws IOException {
+        PacketEndpoint endpoint = sendEndpoint;
+        if (endpoint == null) {
+            synchronized (NetworkUtils.class) {
+                endpoint = sendEndpoint;
+                if (endpoint == null) {
+                    endpoint = PacketEndpoint.open();
+                    sendEndpoint = endpoint;
+                }
+            }
         }
+        return endpoint;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+package dhcp.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.DHCPMessage;
+
+/**
+ * Point d'échange UDP de longue durée : un DatagramChannel non bloquant, un Selector
+ * pour l'attente et des buffers directs recyclés. Remplace l'ouverture d'un socket
+ * par paquet ; serveur et clients partagent ce même chemin d'entrée/sortie.
+ * Un endpoint est vidé par un seul thread ; share() crée un second endpoint sur
+ * le même canal pour un autre thread.
+ */
+public class PacketEndpoint implements Closeable {
+    private static final BufferPool SHARED_BUFFERS = new BufferPool(DHCPCodec.MAX_MESSAGE_SIZE, 1024);
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final BufferPool buffers;
+
+    private PacketEndpoint(DatagramChannel channel, BufferPool buffers) throws IOException {
+        this.channel = channel;
+        this.buffers = buffers;
+        this.selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Ouvre un endpoint lié à une adresse locale (côté serveur)
+     */
+    public static PacketEndpoint bind(SocketAddress local, boolean reusePort) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(local);
+            channel.configureBlocking(false);
+            return new PacketEndpoint(channel, SHARED_BUFFERS);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ouvre un endpoint sur un port éphémère (côté client)
+     */
+    public static PacketEndpoint open() throws IOException {
+        return bind(null, false);
+    }
+
+    /**
+     * Indique si SO_REUSEPORT est disponible sur cette plateforme
+     */
+    public static boolean isReusePortSupported() {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Crée un endpoint supplémentaire sur le même canal, à vider depuis un autre thread
+     */
+    public PacketEndpoint share() throws IOException {
+        return new PacketEndpoint(channel, buffers);
+    }
+
+    /**
+     * Attend au plus timeoutMillis (0 = indéfiniment) puis reçoit jusqu'à max datagrammes
+     * en attente, sans bloquer au-delà du premier. Retourne le nombre de paquets ajoutés.
+     */
+    public int drain(List<Packet> batch, int max, long timeoutMillis) throws IOException {
+        int received = 0;
+        while (received < max) {
+            ByteBuffer buffer = buffers.acquire();
+            SocketAddress source = channel.receive(buffer);
+            if (source == null) {
+                buffers.release(buffer);
+                if (received > 0 || !awaitReadable(timeoutMillis)) {
+                    break;
+                }
+                continue;
+            }
+            buffer.flip();
+            batch.add(new Packet(buffer, source, buffers));
+            received++;
+        }
+        return received;
+    }
+
+    /**
+     * Reçoit un seul datagramme, ou null si le délai expire
+     */
+    public Packet receive(long timeoutMillis) throws IOException {
+        List<Packet> one = new ArrayList<>(1);
+        drain(one, 1, timeoutMillis);
+        return one.isEmpty() ? null : one.get(0);
+    }
+
+    /**
+     * Envoie le contenu restant du buffer
+     */
+    public void send(ByteBuffer payload, SocketAddress target) throws IOException {
+        channel.send(payload, target);
+    }
+
+    /**
+     * Encode un message dans un buffer du pool et l'envoie
+     */
+    public void send(DHCPMessage message, SocketAddress target) throws IOException {
+        ByteBuffer buffer = buffers.acquire();
+        try {
+            DHCPCodec.encode(message, buffer);
+            buffer.flip();
+            channel.send(buffer, target);
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    public ByteBuffer acquireBuffer() {
+        return buffers.acquire();
+    }
+
+    public void releaseBuffer(ByteBuffer buffer) {
+        buffers.release(buffer);
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    private boolean awaitReadable(long timeoutMillis) throws IOException {
+        try {
+            int ready = timeoutMillis > 0 ? selector.select(timeoutMillis) : selector.select();
+            selector.selectedKeys().clear();
+            return ready > 0 || channel.isOpen() && timeoutMillis <= 0;
+        } catch (ClosedSelectorException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ferme le canal (et donc tous les endpoints qui le partagent)
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        selector.close();
+    }
+
+    /**
+     * Datagramme reçu : le buffer est limité aux octets reçus et doit être rendu via release()
+     */
+    public static class Packet {
+        private final ByteBuffer payload;
+        private final SocketAddress source;
+        private final BufferPool owner;
+
+        Packet(ByteBuffer payload, SocketAddress source, BufferPool owner) {
+            this.payload = payload;
+            this.source = source;
+            this.owner = owner;
+        }
+
+        /** Contenu du datagramme (position 0, limite = taille reçue) */
+        public ByteBuffer payload() { return payload; }
+        public SocketAddress source() { return source; }
+        public int length() { return payload.limit(); }
+
+        /** Copie exacte des octets reçus */
+        public byte[] toByteArray() {
+            byte[] data = new byte[payload.limit()];
+            payload.get(0, data);
+            return data;
+        }
+
+        public void release() {
+            owner.release(payload);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package dhcp.messages;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Codec binaire : aller-retour des messages et refus des options mal formées
+ * (toujours par ProtocolException, jamais par une autre exception d'exécution)
+ */
+class DHCPCodecTest {
+
+    @Test
+    void requestAllerRetour() throws Exception {
+        RequestMessage request = new RequestMessage("client-1", InetAddress.getByName("192.168.1.10"),
+                                                    InetAddress.getByName("192.168.1.1"));
+        request.setTransactionId(42);
+        request.setRelayAddress(InetAddress.getByName("10.0.0.1"));
+
+        RequestMessage decoded = (RequestMessage) roundTrip(request);
+        assertEquals("client-1", decoded.getClientId());
+        assertEquals(42, decoded.getTransactionId());
+        assertEquals(request.getRequestedIP(), decoded.getRequestedIP());
+        assertEquals(request.getServerAddress(), decoded.getServerAddress());
+        assertEquals(request.getRelayAddress(), decoded.getRelayAddress());
+    }
+
+    @Test
+    void ackAllerRetour() throws Exception {
+        AckMessage ack = new AckMessage("client-2", InetAddress.getByName("192.168.1.11"),
+                                        InetAddress.getByName("255.255.255.0"), InetAddress.getByName("192.168.1.1"),
+                                        InetAddress.getByName("8.8.8.8"), 3600);
+        ack.setRapidCommit(true);
+
+        AckMessage decoded = (AckMessage) roundTrip(ack);
+        assertEquals(ack.getAssignedIP(), decoded.getAssignedIP());
+        assertEquals(ack.getSubnetMask(), decoded.getSubnetMask());
+        assertEquals(3600, decoded.getLeaseDuration());
+        assertTrue(decoded.isRapidCommit());
+    }
+
+    @Test
+    void nakEtReleaseAllerRetour() throws Exception {
+        NakMessage nak = (NakMessage) roundTrip(new NakMessage("client-3", "Adresse demandée indisponible"));
+        assertEquals("Adresse demandée indisponible", nak.getMessage());
+
+        InetAddress ip = InetAddress.getByName("192.168.1.12");
+        ReleaseMessage release = (ReleaseMessage) roundTrip(
+            new ReleaseMessage("client-3", ip, InetAddress.getByName("192.168.1.1")));
+        assertEquals(ip, release.getReleasedIP());
+    }
+
+    @Test
+    void clientIdDeLongueurNulle() {
+        ByteBuffer buffer = header(DHCPCodec.TYPE_DISCOVER);
+        buffer.put((byte) DHCPCodec.OPT_CLIENT_ID).put((byte) 0);
+        assertMalformed(buffer);
+    }
+
+    @Test
+    void adresseDemandeeDeLongueurInvalide() {
+        ByteBuffer buffer = header(DHCPCodec.TYPE_REQUEST);
+        buffer.put((byte) DHCPCodec.OPT_REQUESTED_IP).put((byte) 2).put((byte) 10).put((byte) 0);
+        DHCPCodec.writeClientId(buffer, "client-4");
+        assertMalformed(buffer);
+    }
+
+    @Test
+    void dureeDeBailDeLongueurInvalide() {
+        ByteBuffer buffer = header(DHCPCodec.TYPE_ACK);
+        buffer.put((byte) DHCPCodec.OPT_LEASE_TIME).put((byte) 8).putLong(3600);
+        DHCPCodec.writeClientId(buffer, "client-5");
+        assertMalformed(buffer);
+    }
+
+    @Test
+    void optionQuiDepasseLeMessage() {
+        ByteBuffer buffer = header(DHCPCodec.TYPE_DISCOVER);
+        buffer.put((byte) DHCPCodec.OPT_CLIENT_ID).put((byte) 200).put((byte) 0).put((byte) 'x');
+        assertMalformed(buffer);
+    }
+
+    @Test
+    void messageTronque() {
+        ByteBuffer buffer = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        buffer.put(new byte[100]).flip();
+        assertThrows(ProtocolException.class, () -> DHCPCodec.decode(buffer));
+    }
+
+    private static DHCPMessage roundTrip(DHCPMessage message) throws ProtocolException {
+        ByteBuffer buffer = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        DHCPCodec.encode(message, buffer);
+        buffer.flip();
+        DHCPMessage decoded = DHCPCodec.decode(buffer);
+        assertEquals(message.getMessageType(), decoded.getMessageType());
+        assertEquals(message.getClientId(), decoded.getClientId());
+        return decoded;
+    }
+
+    private static ByteBuffer header(int type) {
+        ByteBuffer buffer = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        DHCPCodec.writeHeader(buffer, DHCPCodec.OP_BOOTREQUEST, 7, 0, 0);
+        DHCPCodec.writeByteOption(buffer, DHCPCodec.OPT_MESSAGE_TYPE, type);
+        return buffer;
+    }
+
+    private static void assertMalformed(ByteBuffer buffer) {
+        buffer.put((byte) DHCPCodec.OPT_END).flip();
+        assertThrows(ProtocolException.class, () -> DHCPCodec.decode(buffer));
+    }
+}
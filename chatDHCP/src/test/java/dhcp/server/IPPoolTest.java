@@ -0,0 +1,221 @@
+package dhcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dhcp.messages.DHCPCodec;
+
+/**
+ * Pool d'adresses : une adresse n'a qu'un titulaire, et la bitmap des adresses
+ * libres reste cohérente avec la table des baux quel que soit le chemin suivi,
+ * y compris quand le journal refuse l'opération
+ */
+class IPPoolTest {
+
+    @Test
+    void adresseProposeeAUnAutreClientRefusee() throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        InetAddress offered = pool.getAvailableIP("client-a");
+        assertNotNull(offered);
+
+        assertFalse(pool.assignIP("client-b", offered, 3600));
+
+        PoolStats stats = pool.getStats();
+        assertEquals(3, stats.getFree());
+        assertEquals(1, stats.getOffered());
+        assertEquals(0, stats.getLeased());
+        assertFalse(pool.getAvailableIPs().contains(offered));
+        assertTrue(pool.assignIP("client-a", offered, 3600), "l'offre de client-a reste valable");
+    }
+
+    @Test
+    void adresseDemandeeSansOffreRetireeDesLibres() throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        InetAddress requested = InetAddress.getByName("10.0.0.3");
+
+        assertTrue(pool.assignIP("client-a", requested, 3600));
+
+        assertEquals(3, pool.getStats().getFree());
+        assertFalse(pool.getAvailableIPs().contains(requested));
+        for (int i = 0; i < 3; i++) {
+            InetAddress other = pool.getAvailableIP("client-" + i);
+            assertNotNull(other);
+            assertFalse(requested.equals(other), "adresse déjà attribuée proposée à nouveau");
+        }
+    }
+
+    @Test
+    void adresseCedeeRefusee() throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        assertTrue(pool.takeFree(1)); // Cédée à un autre nœud de la grappe
+
+        assertFalse(pool.assignIP("client-a", InetAddress.getByName("10.0.0.2"), 3600));
+        assertEquals(3, pool.getStats().getFree());
+    }
+
+    @Test
+    void offresEtDemandesConcurrentesSansDoublon() throws Exception {
+        int size = 64;
+        IPPool pool = pool("10.0.0.1", "10.0.0.64");
+        Set<InetAddress> held = ConcurrentHashMap.newKeySet();
+        List<String> duplicates = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * (size / 4);
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = first; i < first + size / 4; i++) {
+                    String clientId = "offre-" + i;
+                    InetAddress ip = pool.getAvailableIP(clientId);
+                    if (ip != null && pool.assignIP(clientId, ip, 3600) && !held.add(ip)) {
+                        synchronized (duplicates) {
+                            duplicates.add(ip.getHostAddress());
+                        }
+                    }
+                }
+            }));
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = first; i < first + size / 4; i++) {
+                    InetAddress ip = address(i);
+                    if (!pool.assignIP("demande-" + i, ip, 3600)) {
+                        continue;
+                    }
+                    if (!held.add(ip)) {
+                        synchronized (duplicates) {
+                            duplicates.add(ip.getHostAddress());
+                        }
+                    } else if (i % 4 == 0) {
+                        held.remove(ip); // Libérations mêlées aux attributions
+                        pool.releaseIP("demande-" + i);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(duplicates.isEmpty(), "adresses données deux fois: " + duplicates);
+        PoolStats stats = pool.getStats();
+        assertEquals(size, stats.getFree() + stats.getOffered() + stats.getLeased());
+        assertEquals(held.size(), stats.getOffered() + stats.getLeased());
+        Set<InetAddress> free = new HashSet<>(pool.getAvailableIPs());
+        for (InetAddress ip : held) {
+            assertFalse(free.contains(ip), ip.getHostAddress() + " tenue mais listée libre");
+        }
+    }
+
+    @Test
+    void attributionAnnuleeSiLeJournalEchoue(@TempDir Path dir) throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        LeaseJournal journal = failingJournal(dir);
+        pool.setJournal(journal);
+        InetAddress offered = pool.getAvailableIP("client-a"); // Les offres ne sont pas journalisées
+        assertNotNull(offered);
+
+        assertFalse(pool.assignIP("client-a", offered, 3600));
+        assertFalse(pool.assignIP("client-b", InetAddress.getByName("10.0.0.3"), 3600));
+
+        PoolStats stats = pool.getStats();
+        assertEquals(4, stats.getFree());
+        assertEquals(0, stats.getOffered());
+        assertEquals(0, stats.getLeased());
+        assertTrue(pool.getAvailableIPs().contains(offered));
+        journal.close();
+    }
+
+    @Test
+    void renouvellementAnnuleSiLeJournalEchoue(@TempDir Path dir) throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        InetAddress ip = InetAddress.getByName("10.0.0.2");
+        assertTrue(pool.assignIP("client-a", ip, 60));
+        long deadline = pool.getActiveLeases().get(0).getExpiresAtMillis();
+        LeaseJournal journal = failingJournal(dir);
+        pool.setJournal(journal);
+
+        assertFalse(pool.renewLease("client-a", DHCPCodec.toInt(ip), 3600));
+        assertFalse(pool.assignIP("client-a", ip, 3600));
+
+        List<Lease> active = pool.getActiveLeases();
+        assertEquals(1, active.size());
+        assertEquals(deadline, active.get(0).getExpiresAtMillis(), "échéance non rétablie");
+        journal.close();
+    }
+
+    @Test
+    void renouvellementsSeulementSansPartenaire() throws Exception {
+        IPPool pool = pool("10.0.0.1", "10.0.0.4");
+        InetAddress held = InetAddress.getByName("10.0.0.2");
+        assertTrue(pool.assignIP("client-a", held, 3600));
+        pool.setRenewOnly(true);
+
+        assertEquals(held, pool.getAvailableIP("client-a"));
+        assertTrue(pool.renewLease("client-a", DHCPCodec.toInt(held), 3600));
+        assertTrue(pool.assignIP("client-a", held, 3600));
+        assertNull(pool.getAvailableIP("client-b"));
+        assertFalse(pool.assignIP("client-b", InetAddress.getByName("10.0.0.3"), 3600));
+        assertEquals(3, pool.getStats().getFree());
+
+        pool.setRenewOnly(false);
+        assertNotNull(pool.getAvailableIP("client-b"));
+    }
+
+    /**
+     * Journal dont le segment courant est /dev/full : toute écriture échoue (ENOSPC)
+     */
+    private static LeaseJournal failingJournal(Path dir) throws Exception {
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.isWritable(full), "/dev/full indisponible");
+        Path file = dir.resolve("leases.journal");
+        LeaseJournal journal = new LeaseJournal(file, true);
+        Files.createSymbolicLink(dir.resolve("leases.journal.000001"), full);
+        journal.start();
+        return journal;
+    }
+
+    private static IPPool pool(String start, String end) throws Exception {
+        IPPool pool = new IPPool();
+        pool.initializePool(start, end);
+        return pool;
+    }
+
+    private static InetAddress address(int index) {
+        try {
+            return InetAddress.getByName("10.0.0." + (index + 1));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package dhcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Rejeu du journal après un arrêt brutal : un segment dont la fin est incomplète
+ * ou corrompue est rejoué jusqu'au dernier enregistrement intact
+ */
+class LeaseJournalTest {
+    private static final long NOW = 1_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void finIncompleteTronquee() throws IOException {
+        Path file = dir.resolve("leases.journal");
+        Path segment = write(file, "client-1", "client-2", "client-3");
+        truncate(segment, 5); // Dernier enregistrement coupé dans son identifiant
+
+        List<String> replayed = replay(file);
+        assertEquals(Arrays.asList("client-1", "client-2"), replayed);
+        assertEquals(2 * (23 + 8 + 4), Files.size(segment), "fin incomplète encore présente");
+    }
+
+    @Test
+    void enregistrementCorrompuIgnore() throws IOException {
+        Path file = dir.resolve("leases.journal");
+        Path segment = write(file, "client-1", "client-2");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), channel.size() - 6); // Dans l'identifiant
+        }
+
+        assertEquals(Arrays.asList("client-1"), replay(file));
+    }
+
+    @Test
+    void segmentsSuivantsRejouesApresUneFinIncomplete() throws IOException {
+        Path file = dir.resolve("leases.journal");
+        Path first = write(file, "client-1", "client-2");
+        truncate(first, 1);
+        write(file, "client-3");
+
+        assertEquals(Arrays.asList("client-1", "client-3"), replay(file));
+    }
+
+    @Test
+    void identifiantLongRejoueEntier() throws IOException {
+        Path file = dir.resolve("leases.journal");
+        char[] chars = new char[254];
+        Arrays.fill(chars, 'x');
+        String longId = new String(chars);
+        write(file, longId);
+
+        assertEquals(Arrays.asList(longId), replay(file));
+    }
+
+    @Test
+    void compactageRemplaceLesSegmentsScelles() throws IOException {
+        Path file = dir.resolve("leases.journal");
+        write(file, "client-1", "client-2");
+        write(file, "client-3");
+
+        LeaseJournal journal = new LeaseJournal(file, false);
+        journal.replay((type, ip, clientId, start, deadline) -> { });
+        List<Path> sealed = journal.rotate();
+        journal.compact(sealed, sink -> sink.apply(LeaseJournal.ASSIGN, 0x0A000001, "client-2", NOW, NOW + 60_000));
+        assertTrue(journal.awaitDurable(journal.append(LeaseJournal.ASSIGN, 0x0A000002, "client-4", NOW, NOW + 60_000)));
+        journal.close();
+
+        assertEquals(Arrays.asList("client-2", "client-4"), replay(file));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(3, files.count(), "segments scellés non supprimés"); // compacté, courant, celui du dernier rejeu
+        }
+    }
+
+    /**
+     * Écrit un bail par client dans un nouveau segment ; retourne ce segment
+     */
+    private static Path write(Path file, String... clientIds) throws IOException {
+        LeaseJournal journal = new LeaseJournal(file, false);
+        journal.replay((type, ip, clientId, start, deadline) -> { });
+        long seq = 0;
+        for (int i = 0; i < clientIds.length; i++) {
+            seq = journal.append(LeaseJournal.ASSIGN, 0x0A000001 + i, clientIds[i], NOW, NOW + 60_000);
+        }
+        assertTrue(journal.awaitDurable(seq));
+        journal.close();
+        return lastSegment(file);
+    }
+
+    private static List<String> replay(Path file) throws IOException {
+        List<String> clientIds = new ArrayList<>();
+        LeaseJournal journal = new LeaseJournal(file, false);
+        journal.replay((type, ip, clientId, start, deadline) -> clientIds.add(clientId));
+        journal.close();
+        return clientIds;
+    }
+
+    private static Path lastSegment(Path file) throws IOException {
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            return files.filter(f -> f.getFileName().toString().startsWith(file.getFileName() + "."))
+                        .filter(f -> sizeOf(f) > 0)
+                        .sorted()
+                        .reduce((a, b) -> b)
+                        .get();
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void truncate(Path segment, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+}
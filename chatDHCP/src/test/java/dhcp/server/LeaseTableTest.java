@@ -0,0 +1,133 @@
+package dhcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Table des baux : les identifiants clients arrivent décodés de chaque datagramme,
+ * ce ne sont donc jamais les instances enregistrées comme titulaires
+ */
+class LeaseTableTest {
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void liberationAvecUneAutreInstanceDuMemeIdentifiant() {
+        LeaseTable table = new LeaseTable(16);
+        assertTrue(table.claim(3, new String("client-1")));
+        table.start(3, new String("client-1"), NOW, 60);
+
+        table.release(3, new String("client-1"));
+
+        assertNull(table.holderOf(3));
+        assertEquals(0, table.deadlineOf(3));
+        assertEquals(0, table.leaseCount());
+        assertTrue(table.claim(3, "client-2"), "la position libérée doit pouvoir être reprise");
+    }
+
+    @Test
+    void retraitPuisReprise() {
+        LeaseTable table = new LeaseTable(16);
+        table.claim(5, new String("client-1"));
+        table.reserve(5, new String("client-1"), NOW, 30);
+        assertEquals(1, table.offerCount());
+
+        assertEquals(5, table.remove(new String("client-1")));
+        assertEquals(-1, table.find("client-1"));
+        assertEquals(0, table.offerCount());
+
+        assertTrue(table.claim(5, new String("client-1")));
+        table.start(5, new String("client-1"), NOW, 60);
+        assertEquals(5, table.find(new String("client-1")));
+        assertEquals(1, table.leaseCount());
+    }
+
+    @Test
+    void liberationParUnAutreClientSansEffet() {
+        LeaseTable table = new LeaseTable(16);
+        table.claim(7, "client-1");
+        table.start(7, "client-1", NOW, 60);
+
+        table.release(7, "client-2");
+
+        assertEquals("client-1", table.holderOf(7));
+        assertEquals(NOW + 60_000, table.deadlineOf(7));
+    }
+
+    @Test
+    void renouvellementConfirmeUneOffre() {
+        LeaseTable table = new LeaseTable(16);
+        table.claim(1, "client-1");
+        table.reserve(1, "client-1", NOW, 30);
+
+        assertTrue(table.renew(1, new String("client-1"), NOW + 5_000, 60));
+
+        assertFalse(table.isOffered(1));
+        assertEquals(NOW + 5_000, table.startOf(1));
+        assertEquals(NOW + 65_000, table.deadlineOf(1));
+        assertEquals(0, table.offerCount());
+        assertEquals(1, table.leaseCount());
+    }
+
+    @Test
+    void renouvellementApresExpirationSansEffet() {
+        LeaseTable table = new LeaseTable(16);
+        table.claim(2, "client-1");
+        table.start(2, "client-1", NOW, 60);
+        assertEquals("client-1", table.expire(2, NOW + 60_000));
+
+        assertFalse(table.renew(2, "client-1", NOW + 70_000, 60));
+
+        assertNull(table.holderOf(2));
+        assertEquals(0, table.deadlineOf(2));
+        assertEquals(0, table.leaseCount());
+    }
+
+    @Test
+    void renouvellementApresRepriseParUnAutreClientRefuse() {
+        LeaseTable table = new LeaseTable(16);
+        table.claim(4, "client-1");
+        table.start(4, "client-1", NOW, 60);
+        // client-1 vient d'être vu titulaire ; son bail expire et la position est reprise
+        assertEquals("client-1", table.expire(4, NOW + 60_000));
+        assertTrue(table.claim(4, "client-2"));
+        table.start(4, "client-2", NOW + 61_000, 60);
+
+        assertFalse(table.renew(4, "client-1", NOW + 62_000, 3600));
+
+        assertEquals("client-2", table.holderOf(4));
+        assertEquals(NOW + 121_000, table.deadlineOf(4));
+        assertEquals(NOW + 61_000, table.startOf(4));
+        assertEquals(1, table.leaseCount());
+    }
+
+    @Test
+    void renouvellementsConcurrentsAvecRepriseSansBailEtendu() throws InterruptedException {
+        LeaseTable table = new LeaseTable(16);
+        for (int round = 0; round < 2_000; round++) {
+            long start = NOW + round * 1_000_000L;
+            table.claim(6, "client-1");
+            table.start(6, "client-1", start, 60);
+            Thread renewer = new Thread(() -> table.renew(6, "client-1", start + 1, 3600));
+            renewer.start();
+            String expired = table.expire(6, start + 60_000);
+            if (expired != null) {
+                assertTrue(table.claim(6, "client-2"));
+                table.start(6, "client-2", start + 2, 60);
+            }
+            renewer.join();
+            String holder = table.holderOf(6);
+            long deadline = table.deadlineOf(6);
+            if ("client-2".equals(holder)) {
+                assertEquals(start + 60_002, deadline, "bail de client-2 prolongé par le renouvellement de client-1");
+            } else {
+                assertEquals("client-1", holder);
+                assertEquals(start + 1 + 3_600_000, deadline);
+            }
+            table.remove(holder);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package dhcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Réplication actif/secours : après une coupure, l'instantané de reconnexion
+ * doit aussi retirer du secours les baux libérés pendant la coupure ; une trame
+ * mal formée fait fermer la connexion sans arrêter la réception
+ */
+class ReplicationTest {
+    private static final int IP_A = 0x0A000001;
+    private static final int IP_B = 0x0A000002;
+    private static final int IP_C = 0x0A000003;
+
+    private final Map<Integer, String> primary = new ConcurrentHashMap<>();
+    private final Map<Integer, String> standby = new ConcurrentHashMap<>();
+    private ReplicationReceiver receiver;
+    private ReplicationSender sender;
+
+    @AfterEach
+    void fermer() {
+        if (sender != null) {
+            sender.close();
+        }
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    @Test
+    void resynchronisationApresLiberationsPerdues() throws Exception {
+        int port = freePort();
+        receiver = new ReplicationReceiver(port, 10_000, this::applyToStandby, sink -> snapshot(standby, sink), () -> { });
+        receiver.start();
+
+        primary.put(IP_A, "client-a");
+        primary.put(IP_B, "client-b");
+        sender = connect(port);
+        awaitCondition(() -> standby.equals(primary));
+
+        // Coupure : la libération de B et l'attribution de C ne sont pas transmises
+        sender.close();
+        primary.remove(IP_B);
+        primary.put(IP_C, "client-c");
+
+        sender = connect(port);
+        awaitCondition(() -> standby.equals(primary));
+        Map<Integer, String> expected = new HashMap<>();
+        expected.put(IP_A, "client-a");
+        expected.put(IP_C, "client-c");
+        assertEquals(expected, standby);
+    }
+
+    @Test
+    void retardRemisAZeroAChaqueConnexion() throws Exception {
+        int port = freePort();
+        receiver = new ReplicationReceiver(port, 10_000, this::applyToStandby, sink -> snapshot(standby, sink), () -> { });
+        receiver.start();
+
+        sender = connect(port);
+        awaitCondition(() -> receiver.getApplied() >= 2); // Instantané vide reçu : le flux suit
+        for (int i = 0; i < 100; i++) {
+            sender.publish(LeaseJournal.ASSIGN, IP_A + i, "client-" + i, 0, 1);
+        }
+        awaitCondition(() -> receiver.getApplied() >= 102); // 100 baux et les marqueurs de l'instantané vide
+        sender.close();
+
+        sender = connect(port);
+        awaitCondition(() -> receiver.getApplied() >= 104);
+        sender.publish(LeaseJournal.ASSIGN, IP_C, "client-c", 0, 1);
+        awaitCondition(() -> standby.containsKey(IP_C));
+        awaitCondition(() -> sender.getLag() == 0); // Acquittements comptés depuis le début de la session
+        assertEquals(105, receiver.getApplied());
+    }
+
+    @Test
+    void trameInvalideRejeteeSansArreterLaReception() throws Exception {
+        int port = freePort();
+        receiver = new ReplicationReceiver(port, 10_000, this::applyToStandby, sink -> snapshot(standby, sink), () -> { });
+        receiver.start();
+
+        assertConnectionDropped(port, 1, Integer.MAX_VALUE, new byte[0]); // Longueur démesurée
+        byte[] overrun = new byte[ReplicationSender.HEADER_SIZE];
+        overrun[0] = LeaseJournal.ASSIGN;
+        overrun[ReplicationSender.HEADER_SIZE - 1] = (byte) 200; // Identifiant hors de la trame
+        assertConnectionDropped(port, 1, overrun.length, overrun);
+        assertConnectionDropped(port, 2, overrun.length, new byte[overrun.length]); // Plus d'enregistrements que d'octets
+        assertEquals(0, receiver.getApplied());
+
+        primary.put(IP_A, "client-a");
+        sender = connect(port);
+        awaitCondition(() -> standby.equals(primary));
+    }
+
+    @Test
+    void actifSansAcquittementDuSecours() throws Exception {
+        sender = connect(freePort()); // Aucun secours à l'écoute
+        Thread.sleep(100);
+        assertTrue(sender.getSilenceMillis() >= 100);
+    }
+
+    /**
+     * Envoie une trame au secours et vérifie qu'il ferme la connexion sans l'acquitter
+     */
+    private static void assertConnectionDropped(int port, int count, int length, byte[] records) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(5_000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(ReplicationSender.MAGIC);
+            out.writeInt(IP_A);
+            out.writeInt(count);
+            out.writeInt(length);
+            out.write(records);
+            out.flush();
+            assertEquals(-1, socket.getInputStream().read(), "trame invalide acquittée");
+        }
+    }
+
+    private ReplicationSender connect(int port) {
+        ReplicationSender s = new ReplicationSender(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1, 50,
+                                                    sink -> snapshot(primary, sink));
+        s.start();
+        return s;
+    }
+
+    private void applyToStandby(byte type, int ip, String clientId, long startMillis, long deadlineMillis) {
+        if (type == LeaseJournal.RELEASE || type == LeaseJournal.EXPIRE) {
+            standby.remove(ip, clientId);
+        } else {
+            standby.put(ip, clientId);
+        }
+    }
+
+    private static void snapshot(Map<Integer, String> leases, LeaseJournal.Replayer sink) {
+        for (Map.Entry<Integer, String> lease : leases.entrySet()) {
+            sink.apply(LeaseJournal.ASSIGN, lease.getKey(), lease.getValue(), 0, Long.MAX_VALUE);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "délai dépassé");
+            Thread.sleep(10);
+        }
+    }
+}
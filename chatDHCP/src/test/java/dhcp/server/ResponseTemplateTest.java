@@ -0,0 +1,50 @@
+package dhcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import dhcp.messages.AckMessage;
+import dhcp.messages.DHCPCodec;
+import dhcp.messages.NakMessage;
+
+/**
+ * Les réponses pré-encodées doivent se décoder comme celles construites message par message
+ */
+class ResponseTemplateTest {
+
+    @Test
+    void nakPorteLaRaisonDuRefus() throws Exception {
+        ResponseTemplate template = ResponseTemplate.nak(InetAddress.getByName("192.168.1.1"),
+                                                         DHCPServer.NAK_UNAVAILABLE);
+        ByteBuffer out = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        template.writeTo(out, 42, 0, 0, "client-1");
+        out.flip();
+
+        NakMessage nak = (NakMessage) DHCPCodec.decode(out);
+        assertEquals(DHCPServer.NAK_UNAVAILABLE, nak.getMessage());
+        assertEquals("client-1", nak.getClientId());
+        assertEquals(42, nak.getTransactionId());
+    }
+
+    @Test
+    void ackRenseigneLesChampsDuClient() throws Exception {
+        ResponseTemplate template = new ResponseTemplate(DHCPCodec.TYPE_ACK, InetAddress.getByName("192.168.1.1"), 3600,
+                                                         InetAddress.getByName("255.255.255.0"),
+                                                         InetAddress.getByName("192.168.1.1"),
+                                                         InetAddress.getByName("8.8.8.8"));
+        InetAddress assigned = InetAddress.getByName("192.168.1.50");
+        ByteBuffer out = ByteBuffer.allocate(DHCPCodec.MAX_MESSAGE_SIZE);
+        template.writeTo(out, 7, DHCPCodec.toInt(assigned), 0, "client-2");
+        out.flip();
+
+        AckMessage ack = (AckMessage) DHCPCodec.decode(out);
+        assertEquals(assigned, ack.getAssignedIP());
+        assertEquals(3600, ack.getLeaseDuration());
+        assertEquals(InetAddress.getByName("8.8.8.8"), ack.getDnsServer());
+        assertEquals("client-2", ack.getClientId());
+    }
+}